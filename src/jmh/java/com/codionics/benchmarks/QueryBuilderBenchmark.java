@@ -0,0 +1,98 @@
+package com.codionics.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.codionics.EdgeSpec;
+import com.codionics.GremlinQueryBuilder;
+import com.codionics.VertexSpec;
+
+/**
+ * Cost of filling and rendering builders holding many specs. Run with the gc
+ * profiler to see the allocation rate: java -jar target/benchmarks.jar QueryBuilder -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryBuilderBenchmark {
+
+  @Param({ "100", "1000", "5000" })
+  public int specCount;
+
+  private VertexSpec[] vertexSpecs;
+  private EdgeSpec[] edgeSpecs;
+  private GremlinQueryBuilder filledBuilder;
+
+  @Setup
+  public void setUp() {
+    vertexSpecs = new VertexSpec[specCount];
+    edgeSpecs = new EdgeSpec[specCount];
+    for (int i = 0; i < specCount; i++) {
+      vertexSpecs[i] = new VertexSpec().hasLabel("Artifact").hasId("ID-" + i);
+      edgeSpecs[i] = newEdgeSpec(i);
+    }
+
+    filledBuilder = fill();
+  }
+
+  @Benchmark
+  public GremlinQueryBuilder addSpecs() {
+    return fill();
+  }
+
+  /**
+   * Renders a builder filled with specs that were never rendered, since specs
+   * keep the fragments they rendered. The builder is rebuilt outside of the
+   * measurement before every invocation.
+   */
+  @Benchmark
+  public String renderSpecs(FreshBuilder fresh) {
+    return fresh.builder.getQuery();
+  }
+
+  @Benchmark
+  public String renderCachedSpecs() {
+    return filledBuilder.getQuery();
+  }
+
+  @State(Scope.Thread)
+  public static class FreshBuilder {
+    GremlinQueryBuilder builder;
+
+    @Setup(Level.Invocation)
+    public void setUp(QueryBuilderBenchmark benchmark) {
+      builder = new GremlinQueryBuilder().vertices().edges();
+      for (int i = 0; i < benchmark.specCount; i++) {
+        builder.withVertex(new VertexSpec().hasLabel("Artifact").hasId("ID-" + i)).withEdge(newEdgeSpec(i));
+      }
+    }
+  }
+
+  private GremlinQueryBuilder fill() {
+    GremlinQueryBuilder builder = new GremlinQueryBuilder().vertices().edges();
+    for (int i = 0; i < specCount; i++) {
+      builder.withVertex(vertexSpecs[i]).withEdge(edgeSpecs[i]);
+    }
+    return builder;
+  }
+
+  private static EdgeSpec newEdgeSpec(int i) {
+    return new EdgeSpec().hasKey("KEY-" + i).forSpecificContainer("CKEY-1").lastestVersionOfRelations(true)
+        .outV(new VertexSpec().hasLabel("Artifact").hasId("ID-" + i));
+  }
+}
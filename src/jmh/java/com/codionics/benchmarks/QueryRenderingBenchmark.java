@@ -0,0 +1,110 @@
+package com.codionics.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.codionics.EdgeSpec;
+import com.codionics.GremlinQueryBuilder;
+import com.codionics.ParameterizedQuery;
+import com.codionics.QueryTemplate;
+import com.codionics.VertexSpec;
+
+/**
+ * Rendering cost of single specs of realistic shapes. Run with the gc profiler
+ * to see the allocation rate: java -jar target/benchmarks.jar QueryRendering -prof gc
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryRenderingBenchmark {
+  private VertexSpec cachedFlatVertex;
+  private EdgeSpec cachedNestedEdge;
+  private GremlinQueryBuilder nestedEdgeBuilder;
+  private QueryTemplate nestedEdgeTemplate;
+
+  @Setup
+  public void setUp() {
+    cachedFlatVertex = flatVertexSpec();
+    cachedNestedEdge = nestedEdgeSpec();
+    nestedEdgeBuilder = new GremlinQueryBuilder().withEdge(nestedEdgeSpec());
+    nestedEdgeTemplate = nestedEdgeBuilder.compile();
+  }
+
+  // Specs keep the fragments they rendered, so the rendering benchmarks build
+  // a fresh spec on every invocation; the cost of building it is included.
+
+  @Benchmark
+  public String flatVertex() {
+    return flatVertexSpec().getQuery();
+  }
+
+  @Benchmark
+  public String flatEdge() {
+    return new EdgeSpec().hasKey("KEY-1").forSpecificContainer("CKEY-1").lastestVersionOfRelations(true).getQuery();
+  }
+
+  @Benchmark
+  public String nestedEdge() {
+    return nestedEdgeSpec().getQuery();
+  }
+
+  @Benchmark
+  public String manyPropertiesVertex() {
+    VertexSpec spec = new VertexSpec().hasLabel("Artifact");
+    for (int i = 0; i < 32; i++) {
+      spec.has("property" + i, "value" + i);
+    }
+    return spec.getQuery();
+  }
+
+  @Benchmark
+  public String nestedEdgeThroughBuilder() {
+    return new GremlinQueryBuilder().withEdge(nestedEdgeSpec()).getQuery();
+  }
+
+  @Benchmark
+  public String flatVertexCached() {
+    return cachedFlatVertex.getQuery();
+  }
+
+  @Benchmark
+  public String nestedEdgeCached() {
+    return cachedNestedEdge.getQuery();
+  }
+
+  @Benchmark
+  public ParameterizedQuery nestedEdgeParameterized() {
+    return nestedEdgeBuilder.getParameterizedQuery();
+  }
+
+  @Benchmark
+  public String nestedEdgeTemplate() {
+    return nestedEdgeTemplate.render("KEY-1", "CKEY-1", "TRUE", "ID-1", "KEY-2", "TRUE", "TKEY-1", "V-1");
+  }
+
+  private VertexSpec flatVertexSpec() {
+    return new VertexSpec().hasLabel("Artifact").hasId("ID-1");
+  }
+
+  private EdgeSpec nestedEdgeSpec() {
+    VertexSpec target = new VertexSpec().hasLabel("Artifact").hasKey("KEY-2")
+        .outE(new EdgeSpec().hasLabel("Relation").lastestVersionOfRelations(true)
+            .inV(new VertexSpec().hasLabel("Artifact").hasType("TKEY-1")));
+    return new EdgeSpec().hasLabel("Relation").hasKey("KEY-1").forSpecificContainer("CKEY-1")
+        .lastestVersionOfRelations(true).outV(new VertexSpec().hasLabel("Artifact").hasId("ID-1")).inV(target)
+        .whereInV(new VertexSpec().hasLabel("Artifact").hasVersion("V-1"));
+  }
+}
@@ -0,0 +1,64 @@
+package com.codionics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Several independent vertex/ edge specs rendered into a single request of the
+ * form g.inject(1).union(__.V()...fold(), __.E()...fold()). Every branch folds
+ * its results into one list, so the request returns one list per spec, in the
+ * order of the specs. The mid-traversal E() step needs TinkerPop 3.7 or later.
+ */
+public class BatchQuery {
+  private final String query;
+  private final Map<String, Object> bindings;
+  private final int specCount;
+
+  public BatchQuery(String query, Map<String, Object> bindings, int specCount) {
+    this.query = query;
+    this.bindings = Collections.unmodifiableMap(new LinkedHashMap<>(bindings));
+    this.specCount = specCount;
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  public Map<String, Object> getBindings() {
+    return bindings;
+  }
+
+  public int getSpecCount() {
+    return specCount;
+  }
+
+  /**
+   * Splits the results of the batch request back into the results of every
+   * spec, in the order the specs were added to the builder.
+   */
+  public List<List<Object>> split(List<?> results) {
+    Preconditions.checkArgument(results.size() == specCount, "Expected %s results but got %s.", specCount,
+        results.size());
+
+    List<List<Object>> resultsPerSpec = new ArrayList<>(specCount);
+    for (Object result : results) {
+      if (result instanceof Collection) {
+        resultsPerSpec.add(new ArrayList<>((Collection<?>) result));
+      } else {
+        resultsPerSpec.add(Collections.singletonList(result));
+      }
+    }
+    return resultsPerSpec;
+  }
+
+  @Override
+  public String toString() {
+    return bindings.isEmpty() ? query : query + " " + bindings;
+  }
+}
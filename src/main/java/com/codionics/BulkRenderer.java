@@ -0,0 +1,147 @@
+package com.codionics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Renders many specs across the threads of an executor, in batches. Results are
+ * returned lazily and in the order of the specs. At most a fixed number of
+ * batches are in flight at once, so specs are only pulled from the source as
+ * fast as the rendered queries are consumed.
+ *
+ * <p>
+ * Specs are rendered straight into a buffer reused by each rendering thread,
+ * without creating a {@link GremlinQueryBuilder} per spec.
+ */
+public class BulkRenderer {
+  private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+  private static final BulkRenderer COMMON = new BulkRenderer(ForkJoinPool.commonPool(), 256,
+      2 * ForkJoinPool.getCommonPoolParallelism());
+
+  private static final ThreadLocal<StringBuilder> BUFFERS = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+  private final Executor executor;
+  private final int batchSize;
+  private final int maxBatchesInFlight;
+
+  public BulkRenderer(Executor executor, int batchSize, int maxBatchesInFlight) {
+    Preconditions.checkArgument(batchSize > 0, "The batch size must be positive.");
+    Preconditions.checkArgument(maxBatchesInFlight > 0, "The number of batches in flight must be positive.");
+    this.executor = Preconditions.checkNotNull(executor, "The executor must not be null.");
+    this.batchSize = batchSize;
+    this.maxBatchesInFlight = maxBatchesInFlight;
+  }
+
+  /**
+   * Returns a renderer on the common fork-join pool.
+   */
+  public static BulkRenderer common() {
+    return COMMON;
+  }
+
+  public Iterator<String> render(Iterable<? extends VertexOrEdgeSpec> specs) {
+    return new OrderedIterator(specs.iterator());
+  }
+
+  public Stream<String> render(Stream<? extends VertexOrEdgeSpec> specs) {
+    Iterator<String> queries = new OrderedIterator(specs.iterator());
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(queries, Spliterator.ORDERED | Spliterator.NONNULL),
+        false).onClose(specs::close);
+  }
+
+  public void renderTo(Iterable<? extends VertexOrEdgeSpec> specs, Consumer<String> consumer) {
+    render(specs).forEachRemaining(consumer);
+  }
+
+  public List<String> renderAll(Iterable<? extends VertexOrEdgeSpec> specs) {
+    List<String> queries = new ArrayList<>();
+    renderTo(specs, queries::add);
+    return queries;
+  }
+
+  private static List<String> renderBatch(List<VertexOrEdgeSpec> specs) {
+    StringBuilder builder = BUFFERS.get();
+    List<String> queries = new ArrayList<>(specs.size());
+
+    for (VertexOrEdgeSpec spec : specs) {
+      builder.setLength(0);
+      spec.appendTo(builder);
+      queries.add(builder.toString());
+    }
+
+    // do not let one huge spec pin a large buffer to the thread
+    if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+      BUFFERS.remove();
+    }
+
+    return queries;
+  }
+
+  private final class OrderedIterator implements Iterator<String> {
+    private final Iterator<? extends VertexOrEdgeSpec> source;
+    private final ArrayDeque<CompletableFuture<List<String>>> inFlight = new ArrayDeque<>();
+    private Iterator<String> current = Collections.emptyIterator();
+
+    private OrderedIterator(Iterator<? extends VertexOrEdgeSpec> source) {
+      this.source = source;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        submitBatches();
+        if (inFlight.isEmpty()) {
+          return false;
+        }
+
+        current = await(inFlight.poll()).iterator();
+      }
+
+      return true;
+    }
+
+    @Override
+    public String next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      return current.next();
+    }
+
+    private void submitBatches() {
+      while (inFlight.size() < maxBatchesInFlight && source.hasNext()) {
+        List<VertexOrEdgeSpec> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && source.hasNext()) {
+          batch.add(source.next());
+        }
+
+        inFlight.add(CompletableFuture.supplyAsync(() -> renderBatch(batch), executor));
+      }
+    }
+
+    private List<String> await(CompletableFuture<List<String>> batch) {
+      try {
+        return batch.join();
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause();
+        throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package com.codionics;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * The property values of a spec, in insertion order, stored as alternating
+ * keys and values in one array. Specs rarely have more than a handful of
+ * properties, so a linear scan beats hashing and the map costs two objects
+ * instead of one per entry plus a table. Putting an existing key replaces its
+ * value in place, as in a LinkedHashMap.
+ */
+final class CompactPropertyMap extends AbstractMap<String, Object> {
+  private static final int INITIAL_CAPACITY = 4;
+
+  private Object[] slots;
+  private int size;
+  private boolean readOnly;
+
+  CompactPropertyMap() {
+    this.slots = new Object[INITIAL_CAPACITY * 2];
+  }
+
+  CompactPropertyMap(CompactPropertyMap other) {
+    this.slots = Arrays.copyOf(other.slots, Math.max(other.size + 1, INITIAL_CAPACITY) * 2);
+    this.size = other.size;
+  }
+
+  /**
+   * Makes the map unmodifiable, without wrapping it.
+   */
+  CompactPropertyMap seal() {
+    this.readOnly = true;
+    return this;
+  }
+
+  @Override
+  public Object put(String key, Object value) {
+    Preconditions.checkState(!readOnly, "The properties of a frozen spec cannot be changed.");
+    int index = indexOf(key);
+    if (index >= 0) {
+      Object previous = slots[index + 1];
+      slots[index + 1] = value;
+      return previous;
+    }
+
+    if (size * 2 == slots.length) {
+      slots = Arrays.copyOf(slots, slots.length * 2);
+    }
+    slots[size * 2] = key;
+    slots[size * 2 + 1] = value;
+    size++;
+    return null;
+  }
+
+  @Override
+  public Object get(Object key) {
+    int index = indexOf(key);
+    return index >= 0 ? slots[index + 1] : null;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super String, ? super Object> action) {
+    for (int i = 0; i < size; i++) {
+      action.accept(keyAt(i), slots[i * 2 + 1]);
+    }
+  }
+
+  @Override
+  public Set<Entry<String, Object>> entrySet() {
+    return new AbstractSet<Entry<String, Object>>() {
+      @Override
+      public Iterator<Entry<String, Object>> iterator() {
+        return new Iterator<Entry<String, Object>>() {
+          private int next;
+
+          @Override
+          public boolean hasNext() {
+            return next < size;
+          }
+
+          @Override
+          public Entry<String, Object> next() {
+            if (next >= size) {
+              throw new NoSuchElementException();
+            }
+            int i = next++;
+            return new SimpleImmutableEntry<>(keyAt(i), slots[i * 2 + 1]);
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private String keyAt(int i) {
+    return (String) slots[i * 2];
+  }
+
+  private int indexOf(Object key) {
+    for (int i = 0; i < size * 2; i += 2) {
+      if (Objects.equal(slots[i], key)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
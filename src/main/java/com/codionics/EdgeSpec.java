@@ -1,7 +1,6 @@
 package com.codionics;
 
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -11,154 +10,340 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Objects;
 import com.codionics.utils.StringUtils;
 
+/**
+ * Specification of the edges to look for. A spec is a mutable builder until
+ * {@link #freeze()} is called; the frozen spec is immutable, every mutator on it
+ * returns a new frozen spec sharing the unchanged children, and it can be cached
+ * and rendered concurrently once safely published.
+ */
 public class EdgeSpec implements VertexOrEdgeSpec, StringUtils {
-  private final Logger logger = Logger.getLogger(EdgeSpec.class);
+  private static final Logger logger = Logger.getLogger(EdgeSpec.class);
 
-  private final String latestRelationProperty = "_isLatest";
+  private static final String LATEST_RELATION_PROPERTY = "_isLatest";
 
   private String label;
   private boolean isInE;
   private boolean isOutE;
-  private List<VertexSpec> inVerticesSpecs = new LinkedList<>();
-  private List<VertexSpec> outVerticesSpecs = new LinkedList<>();
-  private List<VertexSpec> whereInVerticesSpecs = new LinkedList<>();
-  private List<VertexSpec> whereOutVerticesSpecs = new LinkedList<>();
-  private Map<String, String> propertyValues = new LinkedHashMap<>();
+  private List<VertexSpec> inVerticesSpecs;
+  private List<VertexSpec> outVerticesSpecs;
+  private List<VertexSpec> whereInVerticesSpecs;
+  private List<VertexSpec> whereOutVerticesSpecs;
+  private CompactPropertyMap propertyValues;
+  private String orderProperty;
+  private long rangeLow = -1;
+  private long rangeHigh = -1;
+  private Projection projection;
+  private boolean frozen;
+  private int frozenHashCode;
+  private FragmentCache fragmentCache;
+
+  public EdgeSpec() {
+  }
+
+  private EdgeSpec(EdgeSpec other) {
+    this.label = other.label;
+    this.isInE = other.isInE;
+    this.isOutE = other.isOutE;
+    this.inVerticesSpecs = SpecStorage.copy(other.inVerticesSpecs);
+    this.outVerticesSpecs = SpecStorage.copy(other.outVerticesSpecs);
+    this.whereInVerticesSpecs = SpecStorage.copy(other.whereInVerticesSpecs);
+    this.whereOutVerticesSpecs = SpecStorage.copy(other.whereOutVerticesSpecs);
+    this.propertyValues = SpecStorage.copy(other.propertyValues);
+    this.orderProperty = other.orderProperty;
+    this.rangeLow = other.rangeLow;
+    this.rangeHigh = other.rangeHigh;
+    this.projection = other.projection;
+  }
 
   public EdgeSpec hasLabel(String label) {
-    this.label = label;
-    return this;
+    EdgeSpec spec = mutable();
+    spec.label = label;
+    return result(spec);
   }
 
   public EdgeSpec hasKey(String key) {
-    this.propertyValues.put("sKey", key);
-    return this;
+    return has("sKey", key);
   }
 
   public EdgeSpec hasId(String id) {
-    this.propertyValues.put("sid", id);
-    return this;
+    return has("sid", id);
   }
 
   public EdgeSpec hasType(String type) {
-    this.propertyValues.put("type", type);
-    return this;
+    return has("type", type);
   }
 
   public EdgeSpec hasVersion(String version) {
-    this.propertyValues.put("version", version);
-    return this;
+    return has("version", version);
   }
 
   public EdgeSpec has(String property, String value) {
-    this.propertyValues.put(property, value);
-    return this;
+    EdgeSpec spec = mutable();
+    spec.propertyValues = SpecStorage.put(spec.propertyValues, property, value);
+    return result(spec);
+  }
+
+  @Override
+  public EdgeSpec has(String property, PropertyPredicate predicate) {
+    EdgeSpec spec = mutable();
+    spec.propertyValues = SpecStorage.put(spec.propertyValues, property, Preconditions.checkNotNull(predicate));
+    return result(spec);
+  }
+
+  public EdgeSpec hasIn(String property, Collection<String> values) {
+    return has(property, PropertyPredicate.within(values));
+  }
+
+  public EdgeSpec hasKeyIn(Collection<String> keys) {
+    return hasIn("sKey", keys);
+  }
+
+  public EdgeSpec hasIdIn(Collection<String> ids) {
+    return hasIn("sid", ids);
   }
 
   public EdgeSpec forSpecificContainer(String containerKey) {
-    this.propertyValues.put("container", containerKey);
-    return this;
+    return has("container", containerKey);
   }
 
   public EdgeSpec lastestVersionOfRelations(boolean latestOnly) {
     String latest = latestOnly ? "TRUE" : "FALSE";
-    this.propertyValues.put(this.latestRelationProperty, latest);
-    return this;
+    return has(LATEST_RELATION_PROPERTY, latest);
   }
 
   public EdgeSpec isInE() {
-    this.isInE = true;
-    return this;
+    EdgeSpec spec = mutable();
+    spec.isInE = true;
+    return result(spec);
   }
 
   public EdgeSpec isOutE() {
-    this.isOutE = true;
-    return this;
+    EdgeSpec spec = mutable();
+    spec.isOutE = true;
+    return result(spec);
   }
 
   public EdgeSpec inV(VertexSpec vertexSpec) {
-    VertexSpec withInV = vertexSpec.isInV();
-    this.inVerticesSpecs.add(withInV);
-    return this;
+    EdgeSpec spec = mutable();
+    VertexSpec nested = withInV(vertexSpec);
+    spec.inVerticesSpecs = SpecStorage.add(spec.inVerticesSpecs, nested);
+    nested.addParent(spec.fragmentCache());
+    return result(spec);
   }
 
   public EdgeSpec outV(VertexSpec vertexSpec) {
-    VertexSpec withOutV = vertexSpec.isOutV();
-    this.outVerticesSpecs.add(withOutV);
-    return this;
+    EdgeSpec spec = mutable();
+    VertexSpec nested = withOutV(vertexSpec);
+    spec.outVerticesSpecs = SpecStorage.add(spec.outVerticesSpecs, nested);
+    nested.addParent(spec.fragmentCache());
+    return result(spec);
   }
 
   public EdgeSpec whereInV(VertexSpec vertexSpec) {
-    VertexSpec withInV = vertexSpec.isInV();
-    this.whereInVerticesSpecs.add(withInV);
-    return this;
+    EdgeSpec spec = mutable();
+    VertexSpec nested = withInV(vertexSpec);
+    spec.whereInVerticesSpecs = SpecStorage.add(spec.whereInVerticesSpecs, nested);
+    nested.addParent(spec.fragmentCache());
+    return result(spec);
   }
 
   public EdgeSpec whereOutV(VertexSpec vertexSpec) {
-    VertexSpec withOutV = vertexSpec.isOutV();
-    this.whereOutVerticesSpecs.add(withOutV);
-    return this;
+    EdgeSpec spec = mutable();
+    VertexSpec nested = withOutV(vertexSpec);
+    spec.whereOutVerticesSpecs = SpecStorage.add(spec.whereOutVerticesSpecs, nested);
+    nested.addParent(spec.fragmentCache());
+    return result(spec);
+  }
+
+  @Override
+  public EdgeSpec orderBy(String property) {
+    EdgeSpec spec = mutable();
+    spec.orderProperty = property;
+    return result(spec);
+  }
+
+  @Override
+  public EdgeSpec range(long low, long high) {
+    Preconditions.checkArgument(low >= 0 && low <= high, "Invalid range [%s, %s).", low, high);
+    EdgeSpec spec = mutable();
+    spec.rangeLow = low;
+    spec.rangeHigh = high;
+    return result(spec);
+  }
+
+  @Override
+  public EdgeSpec limit(long limit) {
+    return range(0, limit);
+  }
+
+  @Override
+  public EdgeSpec withProjection(Projection projection) {
+    EdgeSpec spec = mutable();
+    spec.projection = projection;
+    return result(spec);
+  }
+
+  @Override
+  public Projection getProjection() {
+    return projection;
+  }
+
+  public EdgeSpec values(String... keys) {
+    return withProjection(Projection.values(keys));
+  }
+
+  public EdgeSpec valueMap(String... keys) {
+    return withProjection(Projection.valueMap(keys));
+  }
+
+  public EdgeSpec id() {
+    return withProjection(Projection.id());
+  }
+
+  public EdgeSpec count() {
+    return withProjection(Projection.count());
+  }
+
+  public EdgeSpec project(String... keys) {
+    return withProjection(Projection.project(keys));
+  }
+
+  /**
+   * Returns an immutable copy of this spec, with all its nested vertex specs
+   * frozen as well. A spec that is already frozen is returned as is.
+   */
+  @Override
+  public EdgeSpec freeze() {
+    if (frozen) {
+      return this;
+    }
+
+    EdgeSpec spec = new EdgeSpec(this);
+    SpecStorage.replaceAll(spec.inVerticesSpecs, VertexSpec::freeze);
+    SpecStorage.replaceAll(spec.outVerticesSpecs, VertexSpec::freeze);
+    SpecStorage.replaceAll(spec.whereInVerticesSpecs, VertexSpec::freeze);
+    SpecStorage.replaceAll(spec.whereOutVerticesSpecs, VertexSpec::freeze);
+    return spec.seal();
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return frozen;
   }
 
   public boolean isEmpty() {
     boolean hasNoProperties = propertyValues == null || propertyValues.isEmpty();
-    logger.debug("hasNoProperties: " + hasNoProperties);
-
     boolean hasNoInVertices = inVerticesSpecs == null || inVerticesSpecs.isEmpty();
-    logger.debug("hasNoInVertices: " + hasNoInVertices);
-
     boolean hasNoOutVertices = outVerticesSpecs == null || outVerticesSpecs.isEmpty();
-    logger.debug("hasNoOutVertices: " + hasNoOutVertices);
-
     boolean hasNoWhereInVertices = whereInVerticesSpecs == null || whereInVerticesSpecs.isEmpty();
-    logger.debug("hasNoInVertices: " + hasNoInVertices);
-
     boolean hasNoWhereOutVertices = whereOutVerticesSpecs == null || whereOutVerticesSpecs.isEmpty();
-    logger.debug("hasNoOutVertices: " + hasNoOutVertices);
+
+    if (logger.isDebugEnabled()) {
+      logger.debug("hasNoProperties: " + hasNoProperties);
+      logger.debug("hasNoInVertices: " + hasNoInVertices);
+      logger.debug("hasNoOutVertices: " + hasNoOutVertices);
+      logger.debug("hasNoWhereInVertices: " + hasNoWhereInVertices);
+      logger.debug("hasNoWhereOutVertices: " + hasNoWhereOutVertices);
+    }
 
     return isNullOrEmpty(label) && hasNoProperties && hasNoInVertices && hasNoOutVertices && hasNoWhereInVertices
         && hasNoWhereOutVertices;
   }
 
+  /**
+   * Renders the query once and returns it from then on, until this spec or one
+   * of its nested specs changes.
+   */
   @Override
   public String getQuery() {
-    String query = getEdgeString();
-    StringBuilder builder = new StringBuilder(query);
+    FragmentCache cache = fragmentCache();
+    String query = cache.get();
+    if (query == null) {
+      StringBuilder builder = new StringBuilder(64);
+      render(builder, null);
+      query = builder.toString();
+      cache.set(query);
+    }
+    return query;
+  }
+
+  /**
+   * Appends the cached fragment when there is one. Inline renders of nested
+   * specs are cached for their next render; frozen specs are rendered once,
+   * when they are frozen.
+   */
+  @Override
+  public void appendTo(StringBuilder builder, Map<String, Object> bindings) {
+    if (bindings != null) {
+      render(builder, bindings);
+      return;
+    }
+
+    String fragment = fragmentCache == null ? null : fragmentCache.get();
+    if (fragment != null) {
+      builder.append(fragment);
+    } else if (fragmentCache != null && fragmentCache.hasParents()) {
+      int start = builder.length();
+      render(builder, null);
+      fragmentCache().set(builder.substring(start));
+    } else {
+      render(builder, null);
+    }
+  }
+
+  private void render(StringBuilder builder, Map<String, Object> bindings) {
+    appendEdgeString(builder);
 
-    String labelString = isNullOrEmpty(this.label) ? "" : getLabelString();
-    String propertiesString = (propertyValues == null || propertyValues.isEmpty()) ? "" : getPropertiesString();
-    String inV = (inVerticesSpecs == null || inVerticesSpecs.isEmpty()) ? "" : getVertexQuery(this.inVerticesSpecs);
-    String outV = (outVerticesSpecs == null || outVerticesSpecs.isEmpty()) ? "" : getVertexQuery(this.outVerticesSpecs);
-    String whereInV = (whereInVerticesSpecs == null || whereInVerticesSpecs.isEmpty()) ? ""
-        : getWhereVertexQuery(this.whereInVerticesSpecs);
-    String whereOutV = (whereOutVerticesSpecs == null || whereOutVerticesSpecs.isEmpty()) ? ""
-        : getWhereVertexQuery(this.whereOutVerticesSpecs);
+    if (isNotNullOrEmpty(this.label)) {
+      appendLabel(builder, this.label);
+    }
+
+    if (propertyValues != null && !propertyValues.isEmpty()) {
+      appendProperties(builder, this.propertyValues, bindings);
+    }
 
-    if (isNotNullOrEmpty(labelString)) {
-      builder.append(labelString);
+    if (inVerticesSpecs != null && !inVerticesSpecs.isEmpty()) {
+      appendVertexQuery(builder, this.inVerticesSpecs, bindings);
     }
 
-    if (isNotNullOrEmpty(propertiesString)) {
-      builder.append(propertiesString);
+    if (outVerticesSpecs != null && !outVerticesSpecs.isEmpty()) {
+      appendVertexQuery(builder, this.outVerticesSpecs, bindings);
     }
 
-    if (isNotNullOrEmpty(inV)) {
-      builder.append(inV);
+    if (whereInVerticesSpecs != null && !whereInVerticesSpecs.isEmpty()) {
+      appendWhereVertexQuery(builder, this.whereInVerticesSpecs, bindings);
     }
 
-    if (isNotNullOrEmpty(outV)) {
-      builder.append(outV);
+    if (whereOutVerticesSpecs != null && !whereOutVerticesSpecs.isEmpty()) {
+      appendWhereVertexQuery(builder, this.whereOutVerticesSpecs, bindings);
     }
 
-    if (isNotNullOrEmpty(whereInV)) {
-      builder.append(whereInV);
+    appendPaging(builder, this.orderProperty, this.rangeLow, this.rangeHigh, bindings);
+
+    if (projection != null) {
+      projection.appendTo(builder);
     }
+  }
+
+  @Override
+  public void appendTo(Traversal traversal) {
+    Preconditions.checkArgument(!isInE || !isOutE, "An edge cannot be in and out edge at the same time.");
+    traversal.addStep(isInE ? "inE" : (isOutE ? "outE" : "E"));
 
-    if (isNotNullOrEmpty(whereOutV)) {
-      builder.append(whereOutV);
+    if (isNotNullOrEmpty(this.label)) {
+      traversal.addStep("hasLabel", this.label);
     }
 
-    return builder.toString();
+    SpecStorage.orEmpty(this.propertyValues).forEach((k, v) -> traversal.addStep("has", k, v));
+    SpecStorage.orEmpty(this.inVerticesSpecs).forEach(s -> s.appendTo(traversal));
+    SpecStorage.orEmpty(this.outVerticesSpecs).forEach(s -> s.appendTo(traversal));
+    appendWhereVertexSteps(traversal, this.whereInVerticesSpecs);
+    appendWhereVertexSteps(traversal, this.whereOutVerticesSpecs);
+    appendPaging(traversal, this.orderProperty, this.rangeLow, this.rangeHigh);
+
+    if (projection != null) {
+      projection.appendTo(traversal);
+    }
   }
 
   @Override
@@ -166,11 +351,17 @@ public class EdgeSpec implements VertexOrEdgeSpec, StringUtils {
     if (obj instanceof EdgeSpec) {
       EdgeSpec that = (EdgeSpec) obj;
 
-      return Objects.equal(this.label, that.label) && Objects.equal(this.inVerticesSpecs, that.inVerticesSpecs)
-          && Objects.equal(this.outVerticesSpecs, that.outVerticesSpecs)
-          && Objects.equal(this.whereInVerticesSpecs, that.whereInVerticesSpecs)
-          && Objects.equal(this.whereOutVerticesSpecs, that.whereOutVerticesSpecs)
-          && Objects.equal(this.propertyValues, that.propertyValues);
+      return Objects.equal(this.label, that.label) && Objects.equal(this.isInE, that.isInE)
+          && Objects.equal(this.isOutE, that.isOutE)
+          && Objects.equal(SpecStorage.orEmpty(this.inVerticesSpecs), SpecStorage.orEmpty(that.inVerticesSpecs))
+          && Objects.equal(SpecStorage.orEmpty(this.outVerticesSpecs), SpecStorage.orEmpty(that.outVerticesSpecs))
+          && Objects.equal(SpecStorage.orEmpty(this.whereInVerticesSpecs),
+              SpecStorage.orEmpty(that.whereInVerticesSpecs))
+          && Objects.equal(SpecStorage.orEmpty(this.whereOutVerticesSpecs),
+              SpecStorage.orEmpty(that.whereOutVerticesSpecs))
+          && Objects.equal(SpecStorage.orEmpty(this.propertyValues), SpecStorage.orEmpty(that.propertyValues))
+          && Objects.equal(this.orderProperty, that.orderProperty) && this.rangeLow == that.rangeLow
+          && this.rangeHigh == that.rangeHigh && Objects.equal(this.projection, that.projection);
     }
 
     return false;
@@ -178,56 +369,118 @@ public class EdgeSpec implements VertexOrEdgeSpec, StringUtils {
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(this.label, this.inVerticesSpecs, this.outVerticesSpecs, this.whereInVerticesSpecs,
-        this.whereOutVerticesSpecs, this.propertyValues);
+    if (frozen) {
+      return frozenHashCode;
+    }
+
+    return computeHashCode();
   }
 
-  private String getEdgeString() {
-    Preconditions.checkArgument(!isInE || !isOutE, "An edge cannot be in and out edge at the same time.");
+  private int computeHashCode() {
+    return Objects.hashCode(this.label, this.isInE, this.isOutE, SpecStorage.orEmpty(this.inVerticesSpecs),
+        SpecStorage.orEmpty(this.outVerticesSpecs), SpecStorage.orEmpty(this.whereInVerticesSpecs),
+        SpecStorage.orEmpty(this.whereOutVerticesSpecs), SpecStorage.orEmpty(this.propertyValues),
+        this.orderProperty, this.rangeLow, this.rangeHigh, this.projection);
+  }
 
-    if (isInE) {
-      return ".inE()";
-    } else if (isOutE) {
-      return ".outE()";
-    } else {
-      return "g.E()";
+  private EdgeSpec mutable() {
+    return frozen ? new EdgeSpec(this) : this;
+  }
+
+  private EdgeSpec result(EdgeSpec spec) {
+    return frozen ? spec.seal() : spec.changed();
+  }
+
+  private EdgeSpec changed() {
+    if (fragmentCache != null) {
+      fragmentCache.invalidate();
     }
+    return this;
   }
 
-  private String getLabelString() {
-    return String.format(getLabelFormat(), this.label);
+  private FragmentCache fragmentCache() {
+    if (fragmentCache == null) {
+      fragmentCache = new FragmentCache();
+    }
+    return fragmentCache;
+  }
+
+  boolean hasInVertices() {
+    return inVerticesSpecs != null && !inVerticesSpecs.isEmpty();
+  }
+
+  boolean hasOutVertices() {
+    return outVerticesSpecs != null && !outVerticesSpecs.isEmpty();
+  }
+
+  /**
+   * Links this spec to the spec it was nested in, so that changing it clears
+   * the parent's cached fragment. Frozen specs never change.
+   */
+  void addParent(FragmentCache parent) {
+    if (!frozen) {
+      fragmentCache().addParent(parent);
+    }
   }
 
-  private String getPropertiesString() {
-    StringBuilder builder = new StringBuilder("");
-    this.propertyValues.forEach((k, v) -> builder.append(String.format(getPropertyFormat(), k, v)));
-    String edgePropStr = builder.toString();
+  private EdgeSpec seal() {
+    SpecStorage.seal(this.propertyValues);
+    this.frozenHashCode = computeHashCode();
 
-    logger.info(String.format("Edge properties string: %s", edgePropStr));
-    return edgePropStr;
+    // rendered here, so that a frozen spec is never written to after it is published
+    StringBuilder builder = new StringBuilder(64);
+    render(builder, null);
+    this.fragmentCache = new FragmentCache();
+    this.fragmentCache.set(builder.toString());
+    this.frozen = true;
+    return this;
   }
 
-  private String getVertexQuery(List<VertexSpec> verticesSpecs) {
-    StringBuilder builder = new StringBuilder("");
-    verticesSpecs.forEach(s -> builder.append(s.getQuery()));
-    String vertexQuery = builder.toString();
+  private VertexSpec withInV(VertexSpec vertexSpec) {
+    return frozen ? vertexSpec.freeze().isInV() : vertexSpec.isInV();
+  }
 
-    logger.info(String.format("Vertex query string: %s", vertexQuery));
-    return vertexQuery;
+  private VertexSpec withOutV(VertexSpec vertexSpec) {
+    return frozen ? vertexSpec.freeze().isOutV() : vertexSpec.isOutV();
   }
 
-  private String getWhereVertexQuery(List<VertexSpec> verticesSpecs) {
-    String whereVertexQuery;
-    String vertexQuery = getVertexQuery(verticesSpecs);
+  private void appendEdgeString(StringBuilder builder) {
+    Preconditions.checkArgument(!isInE || !isOutE, "An edge cannot be in and out edge at the same time.");
 
-    if (isNotNullOrEmpty(vertexQuery) && vertexQuery.startsWith(".")) {
-      String withoutDot = vertexQuery.substring(1);
-      whereVertexQuery = String.format(getWhereFormat(), withoutDot);
+    if (isInE) {
+      builder.append(".inE()");
+    } else if (isOutE) {
+      builder.append(".outE()");
     } else {
-      whereVertexQuery = String.format(getWhereFormat(), vertexQuery);
+      builder.append("g.E()");
+    }
+  }
+
+  private void appendWhereVertexSteps(Traversal traversal, List<VertexSpec> verticesSpecs) {
+    if (verticesSpecs != null && !verticesSpecs.isEmpty()) {
+      Traversal whereTraversal = Traversal.anonymous();
+      verticesSpecs.forEach(s -> s.appendTo(whereTraversal));
+      traversal.addStep("where", whereTraversal);
+    }
+  }
+
+  private void appendVertexQuery(StringBuilder builder, List<VertexSpec> verticesSpecs,
+      Map<String, Object> bindings) {
+    for (VertexSpec vertexSpec : verticesSpecs) {
+      vertexSpec.appendTo(builder, bindings);
+    }
+  }
+
+  private void appendWhereVertexQuery(StringBuilder builder, List<VertexSpec> verticesSpecs,
+      Map<String, Object> bindings) {
+    builder.append(".where(");
+    int vertexQueryStart = builder.length();
+    appendVertexQuery(builder, verticesSpecs, bindings);
+
+    if (builder.length() > vertexQueryStart && builder.charAt(vertexQueryStart) == '.') {
+      builder.deleteCharAt(vertexQueryStart);
     }
 
-    logger.info(String.format("Where vertex query string: %s", whereVertexQuery));
-    return whereVertexQuery;
+    builder.append(')');
   }
 }
@@ -0,0 +1,64 @@
+package com.codionics;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The rendered inline query of one spec, with weak links to the caches of the
+ * specs it is nested in. Changing a spec clears its fragment and those of all
+ * its ancestors, so re-rendering a tree after a change only renders the
+ * changed path again and copies the cached fragments of everything else.
+ *
+ * <p>
+ * A parent is only cached after all its children were, so the walk up the
+ * tree stops at the first fragment that is already cleared. Frozen specs fill
+ * their fragment while they are frozen and never write it afterwards, so only
+ * mutable specs, which are not shared between threads, change a cache.
+ */
+final class FragmentCache {
+  private String fragment;
+  private List<WeakReference<FragmentCache>> parents;
+
+  String get() {
+    return fragment;
+  }
+
+  void set(String fragment) {
+    this.fragment = fragment;
+  }
+
+  boolean hasParents() {
+    return parents != null;
+  }
+
+  void addParent(FragmentCache parent) {
+    if (parents == null) {
+      parents = new ArrayList<>(2);
+    }
+
+    parents.removeIf(p -> p.get() == null);
+    for (WeakReference<FragmentCache> p : parents) {
+      if (p.get() == parent) {
+        return;
+      }
+    }
+    parents.add(new WeakReference<>(parent));
+  }
+
+  void invalidate() {
+    if (fragment == null) {
+      return;
+    }
+
+    fragment = null;
+    if (parents != null) {
+      for (WeakReference<FragmentCache> p : parents) {
+        FragmentCache parent = p.get();
+        if (parent != null) {
+          parent.invalidate();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,113 @@
+package com.codionics;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Serializes a {@link Traversal} to gremlin bytecode in GraphSON 3.0, which the
+ * server executes without parsing or compiling a script, e.g.
+ * {"@type":"g:Bytecode","@value":{"step":[["V"],["has","sid","ID-1"]]}}.
+ */
+public final class GraphSONBytecodeSerializer {
+
+  private GraphSONBytecodeSerializer() {
+  }
+
+  public static String serialize(Traversal traversal) {
+    StringBuilder builder = new StringBuilder(128);
+    appendBytecode(builder, traversal);
+    return builder.toString();
+  }
+
+  private static void appendBytecode(StringBuilder builder, Traversal traversal) {
+    builder.append("{\"@type\":\"g:Bytecode\",\"@value\":{\"step\":[");
+    List<TraversalStep> steps = traversal.getSteps();
+    for (int i = 0; i < steps.size(); i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+
+      TraversalStep step = steps.get(i);
+      builder.append('[');
+      appendString(builder, step.getName());
+      for (Object argument : step.getArguments()) {
+        builder.append(',');
+        appendValue(builder, argument);
+      }
+      builder.append(']');
+    }
+    builder.append("]}}");
+  }
+
+  private static void appendValue(StringBuilder builder, Object value) {
+    if (value instanceof Traversal) {
+      appendBytecode(builder, (Traversal) value);
+    } else if (value instanceof PropertyPredicate) {
+      appendPredicate(builder, (PropertyPredicate) value);
+    } else if (value instanceof Collection) {
+      builder.append("{\"@type\":\"g:List\",\"@value\":[");
+      boolean first = true;
+      for (Object item : (Collection<?>) value) {
+        if (!first) {
+          builder.append(',');
+        }
+        appendValue(builder, item);
+        first = false;
+      }
+      builder.append("]}");
+    } else if (value instanceof Integer) {
+      builder.append("{\"@type\":\"g:Int32\",\"@value\":").append(value).append('}');
+    } else if (value instanceof Long) {
+      builder.append("{\"@type\":\"g:Int64\",\"@value\":").append(value).append('}');
+    } else if (value instanceof Double) {
+      builder.append("{\"@type\":\"g:Double\",\"@value\":").append(value).append('}');
+    } else if (value instanceof Boolean) {
+      builder.append(value);
+    } else if (value == null) {
+      builder.append("null");
+    } else {
+      appendString(builder, value.toString());
+    }
+  }
+
+  private static void appendPredicate(StringBuilder builder, PropertyPredicate predicate) {
+    builder.append(predicate.isText() ? "{\"@type\":\"g:TextP\"" : "{\"@type\":\"g:P\"");
+    builder.append(",\"@value\":{\"predicate\":");
+    appendString(builder, predicate.getName());
+    builder.append(",\"value\":");
+    List<Object> values = predicate.getValues();
+    appendValue(builder, values.size() == 1 && !predicate.isCollection() ? values.get(0) : values);
+    builder.append("}}");
+  }
+
+  private static void appendString(StringBuilder builder, String value) {
+    builder.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+      case '"':
+        builder.append("\\\"");
+        break;
+      case '\\':
+        builder.append("\\\\");
+        break;
+      case '\n':
+        builder.append("\\n");
+        break;
+      case '\r':
+        builder.append("\\r");
+        break;
+      case '\t':
+        builder.append("\\t");
+        break;
+      default:
+        if (c < 0x20) {
+          builder.append(String.format("\\u%04x", (int) c));
+        } else {
+          builder.append(c);
+        }
+      }
+    }
+    builder.append('"');
+  }
+}
@@ -1,57 +1,389 @@
 package com.codionics;
 
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
 import com.codionics.utils.StringUtils;
+import com.codionics.utils.Utf8Buffers;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 
 public class GremlinQueryBuilder implements StringUtils {
-  private final Logger logger = Logger.getLogger(GremlinQueryBuilder.class);
+  private static final Logger logger = Logger.getLogger(GremlinQueryBuilder.class);
 
-  private final EdgeSpec emptyEdgeSpec = new EdgeSpec();
-  private final VertexSpec emptyVertexSpec = new VertexSpec();
+  private static volatile RenderMetrics defaultRenderMetrics = RenderMetrics.NOOP;
 
-  private List<VertexOrEdgeSpec> verticesEdgesSpecs = new LinkedList<>();
-  private List<Object> query = new LinkedList<>();
+  private static final EdgeSpec ALL_EDGES = new EdgeSpec().freeze();
+  private static final VertexSpec ALL_VERTICES = new VertexSpec().freeze();
+
+  private final SpecList verticesEdgesSpecs = new SpecList();
+  private RenderMetrics renderMetrics = defaultRenderMetrics;
+  private QueryOptimizer optimizer;
+  private SubTraversalEliminator eliminator;
+  private Projection projection;
+
+  /**
+   * Sets the metrics that builders created from now on report their renders to.
+   */
+  public static void setDefaultRenderMetrics(RenderMetrics renderMetrics) {
+    defaultRenderMetrics = Preconditions.checkNotNull(renderMetrics);
+  }
+
+  public static RenderMetrics getDefaultRenderMetrics() {
+    return defaultRenderMetrics;
+  }
+
+  public GremlinQueryBuilder withRenderMetrics(RenderMetrics renderMetrics) {
+    this.renderMetrics = Preconditions.checkNotNull(renderMetrics);
+    return this;
+  }
+
+  /**
+   * Builds one query per chunk of at most chunkSize distinct values, each
+   * looking up the vertices of the given spec whose property is within the
+   * chunk, e.g. g.V().hasLabel('Artifact').has('sid', within('a', 'b')).
+   */
+  public static List<GremlinQueryBuilder> vertexLookups(VertexSpec vertexSpec, String property,
+      Collection<String> values, int chunkSize) {
+    VertexSpec base = vertexSpec.freeze();
+    List<GremlinQueryBuilder> builders = new ArrayList<>();
+    for (List<String> chunk : partition(values, chunkSize)) {
+      builders.add(new GremlinQueryBuilder().withVertex(base.hasIn(property, chunk)));
+    }
+    return builders;
+  }
+
+  /**
+   * Builds one query per chunk of at most chunkSize distinct values, each
+   * looking up the edges of the given spec whose property is within the chunk.
+   */
+  public static List<GremlinQueryBuilder> edgeLookups(EdgeSpec edgeSpec, String property,
+      Collection<String> values, int chunkSize) {
+    EdgeSpec base = edgeSpec.freeze();
+    List<GremlinQueryBuilder> builders = new ArrayList<>();
+    for (List<String> chunk : partition(values, chunkSize)) {
+      builders.add(new GremlinQueryBuilder().withEdge(base.hasIn(property, chunk)));
+    }
+    return builders;
+  }
+
+  /**
+   * Pages through the results of the given spec with range() steps.
+   */
+  public static QueryPager offsetPages(VertexOrEdgeSpec spec, long pageSize) {
+    return QueryPager.offset(spec, pageSize);
+  }
+
+  /**
+   * Pages through the results of the given spec ordered on the given indexed
+   * property, seeking past the last key of the previous page.
+   */
+  public static QueryPager keysetPages(VertexOrEdgeSpec spec, String keyProperty, long pageSize) {
+    return QueryPager.keyset(spec, keyProperty, pageSize);
+  }
+
+  /**
+   * Orders and folds the filter steps of every rendered query according to the
+   * given schema, so its performance does not depend on the order in which the
+   * spec methods were called. See {@link QueryOptimizer}.
+   */
+  public GremlinQueryBuilder withIndexSchema(IndexSchema indexSchema) {
+    this.optimizer = new QueryOptimizer(indexSchema);
+    if (eliminator != null) {
+      this.eliminator = new SubTraversalEliminator(indexSchema);
+    }
+    return this;
+  }
+
+  /**
+   * Rewrites every rendered query so that identical sub-traversals, like the
+   * same vertex spec nested in several where() steps, are evaluated once. The
+   * index schema, or the default one when none is set, tells which filters are
+   * selective enough to be hoisted. See {@link SubTraversalEliminator}.
+   */
+  public GremlinQueryBuilder withSubTraversalElimination() {
+    this.eliminator = new SubTraversalEliminator(optimizer == null ? IndexSchema.defaultSchema()
+        : optimizer.getSchema());
+    return this;
+  }
 
   public GremlinQueryBuilder vertices() {
-    this.verticesEdgesSpecs.add(emptyVertexSpec);
+    this.verticesEdgesSpecs.addVertexPlaceholder(ALL_VERTICES);
     return this;
   }
 
   public GremlinQueryBuilder edges() {
-    this.verticesEdgesSpecs.add(emptyEdgeSpec);
+    this.verticesEdgesSpecs.addEdgePlaceholder(ALL_EDGES);
     return this;
   }
 
   public GremlinQueryBuilder withVertex(VertexSpec vertexSpec) {
-    // before adding this vertexSpec, remove any empty vertexSpec(s)
-    if (this.verticesEdgesSpecs.contains(emptyVertexSpec)) {
-      this.verticesEdgesSpecs.remove(emptyVertexSpec);
-    }
+    // before adding this vertexSpec, remove the first vertices() placeholder
+    this.verticesEdgesSpecs.removeVertexPlaceholder();
 
     this.verticesEdgesSpecs.add(vertexSpec);
     return this;
   }
 
   public GremlinQueryBuilder withEdge(EdgeSpec edgeSpec) {
-    // before adding this edgeSpec, remove any empty edgeSpec(s)
-    if (this.verticesEdgesSpecs.contains(emptyEdgeSpec)) {
-      this.verticesEdgesSpecs.remove(emptyEdgeSpec);
-    }
+    // before adding this edgeSpec, remove the first edges() placeholder
+    this.verticesEdgesSpecs.removeEdgePlaceholder();
 
     this.verticesEdgesSpecs.add(edgeSpec);
     return this;
   }
 
+  /**
+   * Adds a query walking the given multi-hop path from the vertices matching
+   * the start spec, e.g. g.V().has('sid', 'a').repeat(outE().inV()).times(3).
+   */
+  public GremlinQueryBuilder withPath(VertexSpec start, PathSpec path) {
+    return withVertex(start.path(path));
+  }
+
+  /**
+   * Ends the query with the given terminal step, e.g. values('sid'), so that
+   * only what the caller needs is returned. In a batch query, it ends every
+   * branch. The specs must not end with a terminal step of their own.
+   */
+  public GremlinQueryBuilder withProjection(Projection projection) {
+    this.projection = projection;
+    this.verticesEdgesSpecs.forEach(this::checkProjection);
+    return this;
+  }
+
+  public GremlinQueryBuilder values(String... keys) {
+    return withProjection(Projection.values(keys));
+  }
+
+  public GremlinQueryBuilder valueMap(String... keys) {
+    return withProjection(Projection.valueMap(keys));
+  }
+
+  public GremlinQueryBuilder id() {
+    return withProjection(Projection.id());
+  }
+
+  public GremlinQueryBuilder count() {
+    return withProjection(Projection.count());
+  }
+
+  public GremlinQueryBuilder project(String... keys) {
+    return withProjection(Projection.project(keys));
+  }
+
+  public GremlinQueryBuilder withSpec(VertexOrEdgeSpec spec) {
+    if (spec instanceof VertexSpec) {
+      return withVertex((VertexSpec) spec);
+    }
+
+    return withEdge((EdgeSpec) spec);
+  }
+
   public String getQuery() {
-    StringBuilder builder = new StringBuilder("");
-    this.verticesEdgesSpecs.forEach(s -> builder.append(s.getQuery()));
+    long start = renderMetrics == RenderMetrics.NOOP ? 0 : System.nanoTime();
+    StringBuilder builder = new StringBuilder(64);
+    appendQuery(builder);
     String verticesEdgesStr = builder.toString();
+    recordRender(start, verticesEdgesStr);
 
-    logger.info(String.format("Vertices/ Edges query string: %s", verticesEdgesStr));
+    if (logger.isInfoEnabled()) {
+      logger.info(String.format("Vertices/ Edges query string: %s", verticesEdgesStr));
+    }
     return verticesEdgesStr;
   }
+
+  /**
+   * Writes the query as UTF-8 at the position of the target buffer and returns
+   * the number of bytes written, without creating an intermediate String.
+   *
+   * @throws java.nio.BufferOverflowException when the query does not fit; the
+   *           buffer is left unchanged
+   */
+  public int writeUtf8(ByteBuffer target) {
+    long start = renderMetrics == RenderMetrics.NOOP ? 0 : System.nanoTime();
+    StringBuilder builder = Utf8Buffers.scratch();
+    appendQuery(builder);
+    int bytes = Utf8Buffers.write(builder, target);
+    recordRender(start, builder);
+    return bytes;
+  }
+
+  /**
+   * Writes the query as UTF-8 like {@link #writeUtf8(ByteBuffer)}, moving the
+   * contents to a larger buffer when it does not fit. Returns the buffer that
+   * was written to.
+   */
+  public ByteBuffer appendUtf8(ByteBuffer target) {
+    long start = renderMetrics == RenderMetrics.NOOP ? 0 : System.nanoTime();
+    StringBuilder builder = Utf8Buffers.scratch();
+    appendQuery(builder);
+    ByteBuffer buffer = Utf8Buffers.writeGrowing(builder, target);
+    recordRender(start, builder);
+    return buffer;
+  }
+
+  public ParameterizedQuery getParameterizedQuery() {
+    long start = renderMetrics == RenderMetrics.NOOP ? 0 : System.nanoTime();
+    Map<String, Object> bindings = new LinkedHashMap<>();
+    StringBuilder builder = new StringBuilder(64);
+    for (VertexOrEdgeSpec spec : this.verticesEdgesSpecs) {
+      appendSpec(builder, spec, bindings);
+    }
+    appendProjection(builder);
+    String verticesEdgesStr = builder.toString();
+    recordRender(start, verticesEdgesStr);
+
+    if (logger.isInfoEnabled()) {
+      logger.info(String.format("Parameterized vertices/ edges query string: %s", verticesEdgesStr));
+    }
+    return new ParameterizedQuery(verticesEdgesStr, bindings);
+  }
+
+  /**
+   * Renders every spec as a branch of one union() request, so independent
+   * lookups cost a single round trip. See {@link BatchQuery}.
+   */
+  public BatchQuery getBatchQuery() {
+    return getBatchQuery(null);
+  }
+
+  /**
+   * Renders every spec as a branch of one union() request, with the property
+   * values of all specs bound as parameters.
+   */
+  public BatchQuery getParameterizedBatchQuery() {
+    return getBatchQuery(new LinkedHashMap<>());
+  }
+
+  /**
+   * Returns the structured form of the query, which can be serialized to a
+   * script with {@link ScriptSerializer} or to bytecode with
+   * {@link GraphSONBytecodeSerializer}. When an index schema is set, the
+   * traversal is optimized.
+   */
+  public Traversal getTraversal() {
+    Traversal traversal = Traversal.fromSource();
+    this.verticesEdgesSpecs.forEach(s -> {
+      checkProjection(s);
+      s.appendTo(traversal);
+    });
+    if (projection != null) {
+      projection.appendTo(traversal);
+    }
+    return rewrite(traversal);
+  }
+
+  /**
+   * Returns the structured form of the batch query, with every spec as a
+   * branch of one union() step.
+   */
+  public Traversal getBatchTraversal() {
+    List<Traversal> branches = new ArrayList<>(this.verticesEdgesSpecs.size());
+    for (VertexOrEdgeSpec spec : this.verticesEdgesSpecs) {
+      checkProjection(spec);
+      Traversal branch = Traversal.anonymous().withSteps(spec.getTraversal().getSteps());
+      if (projection != null) {
+        projection.appendTo(branch);
+      }
+      branches.add(branch.addStep("fold"));
+    }
+
+    return rewrite(Traversal.fromSource().addStep("inject", 1).addStep("union", branches.toArray()));
+  }
+
+  public QueryTemplate compile() {
+    return QueryTemplate.compile(getParameterizedQuery());
+  }
+
+  private void appendSpec(StringBuilder builder, VertexOrEdgeSpec spec, Map<String, Object> bindings) {
+    checkProjection(spec);
+    if (optimizer == null && eliminator == null) {
+      spec.appendTo(builder, bindings);
+    } else {
+      ScriptSerializer.appendTo(builder, rewrite(spec.getTraversal()), bindings);
+    }
+  }
+
+  private void checkProjection(VertexOrEdgeSpec spec) {
+    Preconditions.checkState(projection == null || spec.getProjection() == null,
+        "A spec ending with %s cannot be combined with the projection %s of the builder.", spec.getProjection(),
+        projection);
+  }
+
+  private Traversal rewrite(Traversal traversal) {
+    Traversal optimized = optimizer == null ? traversal : optimizer.optimize(traversal);
+    return eliminator == null ? optimized : eliminator.eliminate(optimized);
+  }
+
+  private void appendProjection(StringBuilder builder) {
+    if (projection != null) {
+      projection.appendTo(builder);
+    }
+  }
+
+  private void appendQuery(StringBuilder builder) {
+    for (VertexOrEdgeSpec spec : this.verticesEdgesSpecs) {
+      appendSpec(builder, spec, null);
+    }
+    appendProjection(builder);
+  }
+
+  private void recordRender(long start, CharSequence query) {
+    if (renderMetrics != RenderMetrics.NOOP) {
+      renderMetrics.recordRender(System.nanoTime() - start, query.length());
+    }
+  }
+
+  private static Iterable<List<String>> partition(Collection<String> values, int chunkSize) {
+    Preconditions.checkArgument(chunkSize > 0, "The chunk size must be positive.");
+    return Iterables.partition(new LinkedHashSet<>(values), chunkSize);
+  }
+
+  private BatchQuery getBatchQuery(Map<String, Object> bindings) {
+    long start = renderMetrics == RenderMetrics.NOOP ? 0 : System.nanoTime();
+    StringBuilder builder = new StringBuilder(64);
+    if (eliminator != null) {
+      // shared sub-traversals are hoisted out of the branches, so render from the structured form
+      ScriptSerializer.appendTo(builder, getBatchTraversal(), bindings);
+    } else {
+      appendBatchBranches(builder, bindings);
+    }
+    String batchStr = builder.toString();
+    recordRender(start, batchStr);
+
+    if (logger.isInfoEnabled()) {
+      logger.info(String.format("Batch query string: %s", batchStr));
+    }
+    return new BatchQuery(batchStr, bindings == null ? Collections.emptyMap() : bindings,
+        this.verticesEdgesSpecs.size());
+  }
+
+  private void appendBatchBranches(StringBuilder builder, Map<String, Object> bindings) {
+    builder.append("g.inject(1).union(");
+    boolean first = true;
+    for (VertexOrEdgeSpec spec : this.verticesEdgesSpecs) {
+      if (!first) {
+        builder.append(", ");
+      }
+
+      int branchStart = builder.length();
+      appendSpec(builder, spec, bindings);
+      appendProjection(builder);
+      if (builder.charAt(branchStart) == 'g') {
+        builder.replace(branchStart, branchStart + 1, "__");
+      }
+      builder.append(".fold()");
+      first = false;
+    }
+    builder.append(')');
+  }
 }
@@ -1,21 +1,50 @@
 package com.codionics;
 
+import java.util.stream.Stream;
+
 import org.apache.log4j.Logger;
 
 public interface GremlinUtils {
   final Logger logger = Logger.getLogger(GremlinUtils.class);
 
+  /**
+   * Override to return a cache shared by the implementation, so that rendered
+   * queries of identical specs are reused.
+   */
+  default RenderedQueryCache getRenderedQueryCache() {
+    return null;
+  }
+
   default String getQuery(EdgeSpec es) {
-    GremlinQueryBuilder queryBuilder = new GremlinQueryBuilder().withEdge(es);
-    String gremlinQuery = queryBuilder.getQuery();
-    logger.debug(String.format("Gremlin query using edge specification: %s", gremlinQuery));
+    RenderedQueryCache cache = getRenderedQueryCache();
+    String gremlinQuery = cache != null ? cache.getQuery(es) : new GremlinQueryBuilder().withEdge(es).getQuery();
+    if (logger.isDebugEnabled()) {
+      logger.debug(String.format("Gremlin query using edge specification: %s", gremlinQuery));
+    }
     return gremlinQuery;
   }
 
   default String getQuery(VertexSpec vs) {
-    GremlinQueryBuilder queryBuilder = new GremlinQueryBuilder().withVertex(vs);
-    String gremlinQuery = queryBuilder.getQuery();
-    logger.debug(String.format("Gremlin query using vertex specification: %s", gremlinQuery));
+    RenderedQueryCache cache = getRenderedQueryCache();
+    String gremlinQuery = cache != null ? cache.getQuery(vs) : new GremlinQueryBuilder().withVertex(vs).getQuery();
+    if (logger.isDebugEnabled()) {
+      logger.debug(String.format("Gremlin query using vertex specification: %s", gremlinQuery));
+    }
     return gremlinQuery;
   }
+
+  /**
+   * Override to render bulk queries on a dedicated executor instead of the
+   * common fork-join pool.
+   */
+  default BulkRenderer getBulkRenderer() {
+    return BulkRenderer.common();
+  }
+
+  /**
+   * Renders the queries of many specs in parallel, in the order of the specs.
+   */
+  default Stream<String> getQueries(Stream<? extends VertexOrEdgeSpec> specs) {
+    return getBulkRenderer().render(specs);
+  }
 }
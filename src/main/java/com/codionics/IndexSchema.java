@@ -0,0 +1,50 @@
+package com.codionics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Declares how selective a filter on each property is, i.e. which properties
+ * are backed by a unique or a plain index and which ones match most elements.
+ * {@link QueryOptimizer} uses it to order the filter steps of a traversal.
+ */
+public class IndexSchema {
+
+  public enum Selectivity {
+    UNIQUE, INDEXED, DEFAULT, LOW
+  }
+
+  private final Map<String, Selectivity> selectivities = new HashMap<>();
+
+  /**
+   * Returns the schema of the well-known properties: sid and sKey are unique
+   * and _isLatest matches most edges.
+   */
+  public static IndexSchema defaultSchema() {
+    return new IndexSchema().withUniqueIndex("sid").withUniqueIndex("sKey").withLowSelectivity("_isLatest");
+  }
+
+  public IndexSchema withUniqueIndex(String property) {
+    return withSelectivity(property, Selectivity.UNIQUE);
+  }
+
+  public IndexSchema withIndex(String property) {
+    return withSelectivity(property, Selectivity.INDEXED);
+  }
+
+  public IndexSchema withLowSelectivity(String property) {
+    return withSelectivity(property, Selectivity.LOW);
+  }
+
+  public IndexSchema withSelectivity(String property, Selectivity selectivity) {
+    this.selectivities.put(Preconditions.checkNotNull(property), Preconditions.checkNotNull(selectivity));
+    return this;
+  }
+
+  public Selectivity getSelectivity(String property) {
+    Selectivity selectivity = selectivities.get(property);
+    return selectivity == null ? Selectivity.DEFAULT : selectivity;
+  }
+}
@@ -0,0 +1,61 @@
+package com.codionics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+
+/**
+ * A gremlin query whose values are referenced by parameter name (p0, p1, ...)
+ * instead of being inlined, together with the bindings for those parameters.
+ * Specs of the same shape always render to the same query text, so the server
+ * can reuse its compiled script.
+ */
+public class ParameterizedQuery {
+  private final String query;
+  private final Map<String, Object> bindings;
+
+  public ParameterizedQuery(String query, Map<String, Object> bindings) {
+    this.query = query;
+    this.bindings = Collections.unmodifiableMap(new LinkedHashMap<>(bindings));
+  }
+
+  public String getQuery() {
+    return query;
+  }
+
+  public Map<String, Object> getBindings() {
+    return bindings;
+  }
+
+  /**
+   * Binds the value to the next parameter name, in the order the values are
+   * rendered, and returns that name. Every renderer names its parameters here.
+   */
+  static String bind(Map<String, Object> bindings, Object value) {
+    String name = "p" + bindings.size();
+    bindings.put(name, value);
+    return name;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof ParameterizedQuery) {
+      ParameterizedQuery that = (ParameterizedQuery) obj;
+      return Objects.equal(this.query, that.query) && Objects.equal(this.bindings, that.bindings);
+    }
+
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(this.query, this.bindings);
+  }
+
+  @Override
+  public String toString() {
+    return query + " " + bindings;
+  }
+}
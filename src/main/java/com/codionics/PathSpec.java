@@ -0,0 +1,207 @@
+package com.codionics;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * A uniform multi-hop walk from a vertex, rendered as one repeat() step
+ * instead of a chain of nested specs, e.g.
+ * repeat(outE().hasLabel('dependsOn').inV().simplePath()).times(3).
+ *
+ * <p>
+ * Every hop follows the edges matching the given edge spec. The walk stops
+ * after a number of hops or at the first vertex matching an until() condition,
+ * or both, whichever comes first. With a hop range, the min hops apply to the
+ * until() and emit() conditions too: no vertex is returned before min hops.
+ * Like {@link Projection}, a path spec is
+ * immutable; every method returns a new one, and the edge and vertex specs it
+ * holds are frozen.
+ */
+public final class PathSpec {
+  private final EdgeSpec hop;
+  private final boolean outgoing;
+  private final int minHops;
+  private final int maxHops;
+  private final VertexSpec untilCondition;
+  private final VertexSpec emitCondition;
+  private final boolean emitAll;
+  private final boolean simplePath;
+  private final boolean dedup;
+
+  private PathSpec(EdgeSpec hop, boolean outgoing, int minHops, int maxHops, VertexSpec untilCondition,
+      VertexSpec emitCondition, boolean emitAll, boolean simplePath, boolean dedup) {
+    this.hop = hop;
+    this.outgoing = outgoing;
+    this.minHops = minHops;
+    this.maxHops = maxHops;
+    this.untilCondition = untilCondition;
+    this.emitCondition = emitCondition;
+    this.emitAll = emitAll;
+    this.simplePath = simplePath;
+    this.dedup = dedup;
+  }
+
+  /**
+   * Follows outgoing edges matching the given spec on every hop.
+   */
+  public static PathSpec out(EdgeSpec hop) {
+    return new PathSpec(hop.freeze().isOutE(), true, 0, 0, null, null, false, false, false);
+  }
+
+  /**
+   * Follows incoming edges matching the given spec on every hop.
+   */
+  public static PathSpec in(EdgeSpec hop) {
+    return new PathSpec(hop.freeze().isInE(), false, 0, 0, null, null, false, false, false);
+  }
+
+  /**
+   * Walks exactly the given number of hops.
+   */
+  public PathSpec times(int hops) {
+    return hops(hops, hops);
+  }
+
+  /**
+   * Walks up to max hops and returns every vertex reached after min hops or
+   * more. An until() condition only stops the walk, and an emit() condition
+   * only returns a vertex, once min hops were walked.
+   */
+  public PathSpec hops(int min, int max) {
+    Preconditions.checkArgument(min > 0 && min <= max, "Invalid hop range [%s, %s].", min, max);
+    return new PathSpec(hop, outgoing, min, max, untilCondition, emitCondition, emitAll, simplePath, dedup);
+  }
+
+  /**
+   * Stops at the first vertex matching the given spec. Combined with a hop
+   * count, the walk also stops after that many hops.
+   */
+  public PathSpec until(VertexSpec condition) {
+    return new PathSpec(hop, outgoing, minHops, maxHops, condition.freeze(), emitCondition, emitAll, simplePath,
+        dedup);
+  }
+
+  /**
+   * Also returns every vertex passed on the way.
+   */
+  public PathSpec emit() {
+    return new PathSpec(hop, outgoing, minHops, maxHops, untilCondition, null, true, simplePath, dedup);
+  }
+
+  /**
+   * Also returns the vertices passed on the way that match the given spec.
+   */
+  public PathSpec emit(VertexSpec condition) {
+    return new PathSpec(hop, outgoing, minHops, maxHops, untilCondition, condition.freeze(), false, simplePath,
+        dedup);
+  }
+
+  /**
+   * Never revisits a vertex on the same path, so cycles do not multiply the
+   * results.
+   */
+  public PathSpec simplePath() {
+    return new PathSpec(hop, outgoing, minHops, maxHops, untilCondition, emitCondition, emitAll, true, dedup);
+  }
+
+  /**
+   * Returns every reached vertex once, however many paths lead to it.
+   */
+  public PathSpec dedup() {
+    return new PathSpec(hop, outgoing, minHops, maxHops, untilCondition, emitCondition, emitAll, simplePath, true);
+  }
+
+  public void appendTo(StringBuilder builder, Map<String, Object> bindings) {
+    Traversal steps = Traversal.anonymous();
+    appendTo(steps);
+    builder.append('.');
+    ScriptSerializer.appendTo(builder, steps, bindings);
+  }
+
+  public void appendTo(Traversal traversal) {
+    Preconditions.checkState(maxHops > 0 || untilCondition != null,
+        "A path needs a hop count or an until() condition.");
+
+    Traversal repeated = Traversal.anonymous();
+    hop.appendTo(repeated);
+    if (outgoing ? !hop.hasInVertices() : !hop.hasOutVertices()) {
+      repeated.addStep(outgoing ? "inV" : "outV");
+    }
+    if (simplePath) {
+      repeated.addStep("simplePath");
+    }
+    traversal.addStep("repeat", repeated);
+
+    boolean hasRange = minHops > 0 && minHops < maxHops;
+    if (untilCondition == null) {
+      traversal.addStep("times", maxHops);
+    } else if (maxHops == 0) {
+      traversal.addStep("until", condition(untilCondition));
+    } else {
+      traversal.addStep("until", Traversal.anonymous().addStep("or", afterMinHops(condition(untilCondition),
+          hasRange), loops("is", maxHops)));
+    }
+
+    if (emitCondition != null) {
+      traversal.addStep("emit", afterMinHops(condition(emitCondition), hasRange));
+    } else if (hasRange) {
+      // emit() alone would also return the vertices before min hops
+      traversal.addStep("emit", afterMinHops());
+    } else if (emitAll) {
+      traversal.addStep("emit");
+    }
+
+    if (dedup) {
+      traversal.addStep("dedup");
+    }
+  }
+
+  /**
+   * The filters of a vertex spec, without its V() start step.
+   */
+  private static Traversal condition(VertexSpec spec) {
+    List<TraversalStep> steps = spec.getTraversal().getSteps();
+    return Traversal.anonymous().withSteps(steps.subList(1, steps.size()));
+  }
+
+  private Traversal afterMinHops() {
+    return loops("is", PropertyPredicate.gte(minHops));
+  }
+
+  private Traversal afterMinHops(Traversal condition, boolean hasRange) {
+    return hasRange ? Traversal.anonymous().addStep("and", condition, afterMinHops()) : condition;
+  }
+
+  private static Traversal loops(String step, Object argument) {
+    return Traversal.anonymous().addStep("loops").addStep(step, argument);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof PathSpec) {
+      PathSpec that = (PathSpec) obj;
+      return Objects.equal(this.hop, that.hop) && this.outgoing == that.outgoing && this.minHops == that.minHops
+          && this.maxHops == that.maxHops && Objects.equal(this.untilCondition, that.untilCondition)
+          && Objects.equal(this.emitCondition, that.emitCondition) && this.emitAll == that.emitAll
+          && this.simplePath == that.simplePath && this.dedup == that.dedup;
+    }
+
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(this.hop, this.outgoing, this.minHops, this.maxHops, this.untilCondition,
+        this.emitCondition, this.emitAll, this.simplePath, this.dedup);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    appendTo(builder, null);
+    return builder.toString();
+  }
+}
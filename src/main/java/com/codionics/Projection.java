@@ -0,0 +1,118 @@
+package com.codionics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.codionics.utils.GremlinLiterals;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * The terminal step of a query, selecting what the server returns for every
+ * matching element instead of the whole element with all its properties.
+ */
+public final class Projection {
+  private final String step;
+  private final List<String> keys;
+
+  private Projection(String step, String... keys) {
+    this.step = step;
+    this.keys = Collections.unmodifiableList(Arrays.asList(keys.clone()));
+  }
+
+  /**
+   * Returns the values of the given properties, e.g. values('sid', 'version').
+   */
+  public static Projection values(String... keys) {
+    return new Projection("values", keys);
+  }
+
+  /**
+   * Returns a map of the given properties, or of all properties when none is
+   * given, e.g. valueMap('sid', 'version').
+   */
+  public static Projection valueMap(String... keys) {
+    return new Projection("valueMap", keys);
+  }
+
+  public static Projection id() {
+    return new Projection("id");
+  }
+
+  public static Projection count() {
+    return new Projection("count");
+  }
+
+  /**
+   * Returns a map of the given properties with one value each, e.g.
+   * project('sid', 'version').by('sid').by('version').
+   */
+  public static Projection project(String... keys) {
+    Preconditions.checkArgument(keys.length > 0, "project() needs at least one key.");
+    return new Projection("project", keys);
+  }
+
+  public String getStep() {
+    return step;
+  }
+
+  public List<String> getKeys() {
+    return keys;
+  }
+
+  public void appendTo(StringBuilder builder) {
+    builder.append('.').append(step).append('(');
+    appendKeys(builder);
+    builder.append(')');
+
+    if ("project".equals(step)) {
+      for (String key : keys) {
+        builder.append(".by(");
+        GremlinLiterals.appendQuoted(builder, key);
+        builder.append(')');
+      }
+    }
+  }
+
+  public void appendTo(Traversal traversal) {
+    traversal.addStep(step, keys.toArray());
+
+    if ("project".equals(step)) {
+      for (String key : keys) {
+        traversal.addStep("by", key);
+      }
+    }
+  }
+
+  private void appendKeys(StringBuilder builder) {
+    for (int i = 0; i < keys.size(); i++) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+      GremlinLiterals.appendQuoted(builder, keys.get(i));
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof Projection) {
+      Projection that = (Projection) obj;
+      return Objects.equal(this.step, that.step) && Objects.equal(this.keys, that.keys);
+    }
+
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(this.step, this.keys);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    appendTo(builder);
+    return builder.toString();
+  }
+}
@@ -0,0 +1,240 @@
+package com.codionics;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import com.codionics.utils.GremlinLiterals;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A predicate on a property value, rendered as the matching gremlin predicate
+ * inside a has() step, e.g. has('sid', within('a', 'b')) or
+ * has('sKey', startingWith('a')), so that the filter runs on the server.
+ */
+public final class PropertyPredicate {
+  private final String name;
+  private final List<Object> values;
+  private final boolean collection;
+  private final boolean text;
+  private final boolean sideEffect;
+
+  private PropertyPredicate(String name, List<Object> values, boolean collection, boolean text) {
+    this(name, values, collection, text, false);
+  }
+
+  private PropertyPredicate(String name, List<Object> values, boolean collection, boolean text,
+      boolean sideEffect) {
+    this.name = name;
+    this.values = values;
+    this.collection = collection;
+    this.text = text;
+    this.sideEffect = sideEffect;
+  }
+
+  public static PropertyPredicate within(Collection<?> values) {
+    Preconditions.checkArgument(!values.isEmpty(), "within() needs at least one value.");
+    return new PropertyPredicate("within", ImmutableList.copyOf(values), true, false);
+  }
+
+  /**
+   * Matches the elements collected under the given side-effect key by an
+   * aggregate() step, as in where(within('a')). The key is never bound as a
+   * parameter.
+   */
+  public static PropertyPredicate withinSideEffect(String key) {
+    return new PropertyPredicate("within", ImmutableList.of(key), false, false, true);
+  }
+
+  public static PropertyPredicate without(Collection<?> values) {
+    Preconditions.checkArgument(!values.isEmpty(), "without() needs at least one value.");
+    return new PropertyPredicate("without", ImmutableList.copyOf(values), true, false);
+  }
+
+  /**
+   * Matches values greater than or equal to from and less than to.
+   */
+  public static PropertyPredicate between(Object from, Object to) {
+    return new PropertyPredicate("between", ImmutableList.of(from, to), false, false);
+  }
+
+  public static PropertyPredicate gt(Object value) {
+    return single("gt", value, false);
+  }
+
+  public static PropertyPredicate gte(Object value) {
+    return single("gte", value, false);
+  }
+
+  public static PropertyPredicate lt(Object value) {
+    return single("lt", value, false);
+  }
+
+  public static PropertyPredicate lte(Object value) {
+    return single("lte", value, false);
+  }
+
+  public static PropertyPredicate neq(Object value) {
+    return single("neq", value, false);
+  }
+
+  public static PropertyPredicate startingWith(String prefix) {
+    return single("startingWith", prefix, true);
+  }
+
+  private static PropertyPredicate single(String name, Object value, boolean text) {
+    return new PropertyPredicate(name, ImmutableList.of(value), false, text);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public List<Object> getValues() {
+    return values;
+  }
+
+  /**
+   * Whether the predicate takes its values as one collection, like within().
+   */
+  public boolean isCollection() {
+    return collection;
+  }
+
+  /**
+   * Whether the predicate is a text predicate (TextP), like startingWith().
+   */
+  public boolean isText() {
+    return text;
+  }
+
+  /**
+   * Whether the value of the predicate is a side-effect key rather than a
+   * property value, like withinSideEffect().
+   */
+  public boolean isSideEffect() {
+    return sideEffect;
+  }
+
+  /**
+   * Writes the predicate with its values inlined or, when bindings is not null,
+   * with its values bound as parameters. The values of a collection predicate
+   * are bound as a single list parameter.
+   */
+  public void appendTo(StringBuilder builder, Map<String, Object> bindings) {
+    builder.append(name).append('(');
+    if (bindings == null || sideEffect) {
+      GremlinLiterals.append(builder, values);
+    } else if (collection) {
+      appendParameter(builder, bindings, values);
+    } else {
+      for (int i = 0; i < values.size(); i++) {
+        if (i > 0) {
+          builder.append(", ");
+        }
+        appendParameter(builder, bindings, values.get(i));
+      }
+    }
+    builder.append(')');
+  }
+
+  /**
+   * Evaluates the predicate against a property value, as the server would. A
+   * missing property (null) never matches.
+   */
+  public boolean test(Object value) {
+    if (value == null) {
+      return false;
+    }
+
+    if (sideEffect) {
+      throw new UnsupportedOperationException("A side-effect predicate needs the side-effect values: " + this);
+    }
+
+    switch (name) {
+    case "within":
+      return contains(value);
+    case "without":
+      return !contains(value);
+    case "between":
+      return isOrdered(value, values.get(0), c -> c >= 0) && isOrdered(value, values.get(1), c -> c < 0);
+    case "gt":
+      return isOrdered(value, values.get(0), c -> c > 0);
+    case "gte":
+      return isOrdered(value, values.get(0), c -> c >= 0);
+    case "lt":
+      return isOrdered(value, values.get(0), c -> c < 0);
+    case "lte":
+      return isOrdered(value, values.get(0), c -> c <= 0);
+    case "neq":
+      return !isEqual(value, values.get(0));
+    case "startingWith":
+      return value instanceof String && ((String) value).startsWith((String) values.get(0));
+    default:
+      throw new UnsupportedOperationException("Unknown predicate: " + name);
+    }
+  }
+
+  private boolean contains(Object value) {
+    for (Object candidate : values) {
+      if (isEqual(value, candidate)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isEqual(Object value, Object other) {
+    if (value instanceof Number && other instanceof Number) {
+      return Double.compare(((Number) value).doubleValue(), ((Number) other).doubleValue()) == 0;
+    }
+    return value.equals(other);
+  }
+
+  /**
+   * Tests the comparison of two values; values that cannot be compared, like a
+   * string and a number, never match.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static boolean isOrdered(Object value, Object other, IntPredicate comparison) {
+    if (value instanceof Number && other instanceof Number) {
+      return comparison.test(Double.compare(((Number) value).doubleValue(), ((Number) other).doubleValue()));
+    }
+
+    if (value instanceof Comparable && value.getClass() == other.getClass()) {
+      return comparison.test(((Comparable) value).compareTo(other));
+    }
+
+    return false;
+  }
+
+  private static void appendParameter(StringBuilder builder, Map<String, Object> bindings, Object value) {
+    builder.append(ParameterizedQuery.bind(bindings, value));
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof PropertyPredicate) {
+      PropertyPredicate that = (PropertyPredicate) obj;
+      return Objects.equal(this.name, that.name) && Objects.equal(this.values, that.values)
+          && this.sideEffect == that.sideEffect;
+    }
+
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(this.name, this.values, this.sideEffect);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    appendTo(builder, null);
+    return builder.toString();
+  }
+}
@@ -0,0 +1,181 @@
+package com.codionics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Renders queries and submits them asynchronously over a
+ * {@link QueryTransport}, keeping at most a fixed number of requests in flight.
+ * Once the limit is reached, submitting blocks until a request completes, so a
+ * fast producer is slowed down to the pace of the transport instead of queuing
+ * without bound.
+ *
+ * <p>
+ * Because {@link #submit(GremlinQueryBuilder)} blocks, it must not be called
+ * from a callback on one of the returned futures: such callbacks run on the
+ * transport's completion thread, which then cannot complete the requests that
+ * would free a slot. Use {@link #trySubmit(GremlinQueryBuilder)} there, or an
+ * async callback on another executor.
+ *
+ * <p>
+ * With coalescing on, a query submitted while an identical query (same script
+ * and bindings) is in flight shares its result instead of being sent again.
+ */
+public class QueryExecutor {
+  private static final Logger logger = Logger.getLogger(QueryExecutor.class);
+
+  private final QueryTransport transport;
+  private final int maxInFlight;
+  private final Semaphore permits;
+  private final ConcurrentMap<ParameterizedQuery, CompletableFuture<List<Object>>> pending =
+      new ConcurrentHashMap<>();
+  private final LongAdder submitted = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private volatile boolean coalescing;
+
+  public QueryExecutor(QueryTransport transport, int maxInFlight) {
+    Preconditions.checkArgument(maxInFlight > 0, "The number of requests in flight must be positive.");
+    this.transport = Preconditions.checkNotNull(transport, "The transport must not be null.");
+    this.maxInFlight = maxInFlight;
+    this.permits = new Semaphore(maxInFlight, true);
+  }
+
+  public QueryExecutor withCoalescing() {
+    this.coalescing = true;
+    return this;
+  }
+
+  public CompletableFuture<List<Object>> submit(VertexOrEdgeSpec spec) {
+    return submit(new GremlinQueryBuilder().withSpec(spec));
+  }
+
+  /**
+   * Renders the query on the calling thread and submits it, blocking while the
+   * maximum number of requests is in flight. The traversal is built from the
+   * builder when the transport needs it, so the builder must not be changed
+   * until the returned future completes.
+   */
+  public CompletableFuture<List<Object>> submit(GremlinQueryBuilder builder) {
+    return submit(builder, true);
+  }
+
+  public CompletableFuture<List<Object>> trySubmit(VertexOrEdgeSpec spec) {
+    return trySubmit(new GremlinQueryBuilder().withSpec(spec));
+  }
+
+  /**
+   * Like {@link #submit(GremlinQueryBuilder)}, but never blocks: when the
+   * maximum number of requests is in flight, the returned future fails with a
+   * {@link RejectedExecutionException}. A query coalesced with one in flight is
+   * never rejected.
+   */
+  public CompletableFuture<List<Object>> trySubmit(GremlinQueryBuilder builder) {
+    return submit(builder, false);
+  }
+
+  /**
+   * Submits every query in order and returns their results in the same order,
+   * once all of them arrived.
+   */
+  public CompletableFuture<List<List<Object>>> submitAll(Iterable<GremlinQueryBuilder> builders) {
+    List<CompletableFuture<List<Object>>> futures = new ArrayList<>();
+    builders.forEach(b -> futures.add(submit(b)));
+
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+      List<List<Object>> results = new ArrayList<>(futures.size());
+      futures.forEach(f -> results.add(f.join()));
+      return results;
+    });
+  }
+
+  public int getInFlightCount() {
+    return maxInFlight - permits.availablePermits();
+  }
+
+  public long getSubmittedCount() {
+    return submitted.sum();
+  }
+
+  public long getCoalescedCount() {
+    return coalesced.sum();
+  }
+
+  private CompletableFuture<List<Object>> submit(GremlinQueryBuilder builder, boolean block) {
+    // the traversal is only built if the request is sent to a transport that evaluates it
+    QueryRequest request = new QueryRequest(builder.getParameterizedQuery(), builder::getTraversal);
+    if (!coalescing) {
+      return send(request, block);
+    }
+
+    CompletableFuture<List<Object>> promise = new CompletableFuture<>();
+    CompletableFuture<List<Object>> existing = pending.putIfAbsent(request.getQuery(), promise);
+    if (existing != null) {
+      coalesced.increment();
+      // a dependent future, so one caller cannot cancel the result for the others
+      return existing.thenApply(results -> results);
+    }
+
+    CompletableFuture<List<Object>> response;
+    try {
+      response = send(request, block);
+    } catch (RuntimeException e) {
+      pending.remove(request.getQuery(), promise);
+      promise.completeExceptionally(e);
+      throw e;
+    }
+
+    response.whenComplete((results, failure) -> {
+      pending.remove(request.getQuery(), promise);
+      if (failure != null) {
+        promise.completeExceptionally(failure);
+      } else {
+        promise.complete(results);
+      }
+    });
+    return promise.thenApply(results -> results);
+  }
+
+  private CompletableFuture<List<Object>> send(QueryRequest request, boolean block) {
+    if (block) {
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return failed(e);
+      }
+    } else if (!permits.tryAcquire()) {
+      return failed(new RejectedExecutionException(
+          String.format("%d requests are already in flight.", maxInFlight)));
+    }
+
+    CompletableFuture<List<Object>> response;
+    try {
+      submitted.increment();
+      response = transport.submit(request);
+    } catch (RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+
+    if (logger.isDebugEnabled()) {
+      logger.debug(String.format("Submitted query: %s", request));
+    }
+    return response.whenComplete((results, failure) -> permits.release());
+  }
+
+  private static CompletableFuture<List<Object>> failed(Throwable failure) {
+    CompletableFuture<List<Object>> future = new CompletableFuture<>();
+    future.completeExceptionally(failure);
+    return future;
+  }
+}
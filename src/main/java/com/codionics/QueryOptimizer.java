@@ -0,0 +1,131 @@
+package com.codionics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.codionics.IndexSchema.Selectivity;
+import com.google.common.base.Preconditions;
+
+/**
+ * Rewrites a traversal so that its performance does not depend on the order in
+ * which the spec methods were called. Within every run of consecutive filter
+ * steps (hasLabel, has and where), the steps are ordered by the selectivity the
+ * {@link IndexSchema} declares: unique index lookups first, then hasLabel, then
+ * indexed, unindexed and low selectivity properties, and where() filters last.
+ * Identical filters are folded into one, and so is a within() filter on a
+ * property that an equality filter in the same run already restricts.
+ */
+public class QueryOptimizer {
+  private final IndexSchema schema;
+
+  public QueryOptimizer(IndexSchema schema) {
+    this.schema = Preconditions.checkNotNull(schema);
+  }
+
+  IndexSchema getSchema() {
+    return schema;
+  }
+
+  public Traversal optimize(Traversal traversal) {
+    List<TraversalStep> optimized = new ArrayList<>();
+    List<TraversalStep> filters = new ArrayList<>();
+
+    for (TraversalStep step : traversal.getSteps()) {
+      TraversalStep optimizedStep = optimizeNested(step);
+      if (isFilter(optimizedStep)) {
+        filters.add(optimizedStep);
+      } else {
+        optimized.addAll(optimizeFilters(filters));
+        filters.clear();
+        optimized.add(optimizedStep);
+      }
+    }
+    optimized.addAll(optimizeFilters(filters));
+
+    return traversal.withSteps(optimized);
+  }
+
+  private TraversalStep optimizeNested(TraversalStep step) {
+    List<Object> arguments = step.getArguments();
+    boolean hasNested = false;
+    for (Object argument : arguments) {
+      hasNested |= argument instanceof Traversal;
+    }
+
+    if (!hasNested) {
+      return step;
+    }
+
+    Object[] optimizedArguments = new Object[arguments.size()];
+    for (int i = 0; i < optimizedArguments.length; i++) {
+      Object argument = arguments.get(i);
+      optimizedArguments[i] = argument instanceof Traversal ? optimize((Traversal) argument) : argument;
+    }
+    return new TraversalStep(step.getName(), optimizedArguments);
+  }
+
+  private List<TraversalStep> optimizeFilters(List<TraversalStep> filters) {
+    Set<TraversalStep> distinct = new LinkedHashSet<>(filters);
+    List<TraversalStep> folded = new ArrayList<>(distinct.size());
+    for (TraversalStep filter : distinct) {
+      if (!isRestrictedByEquality(filter, distinct)) {
+        folded.add(filter);
+      }
+    }
+
+    folded.sort(Comparator.comparingInt(this::rank));
+    return folded;
+  }
+
+  private boolean isRestrictedByEquality(TraversalStep filter, Set<TraversalStep> filters) {
+    if (!isHas(filter) || !(filter.getArgument(1) instanceof PropertyPredicate)) {
+      return false;
+    }
+
+    PropertyPredicate predicate = (PropertyPredicate) filter.getArgument(1);
+    if (!"within".equals(predicate.getName())) {
+      return false;
+    }
+
+    for (TraversalStep other : filters) {
+      if (isHas(other) && other.getArgument(0).equals(filter.getArgument(0))
+          && predicate.getValues().contains(other.getArgument(1))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int rank(TraversalStep step) {
+    switch (step.getName()) {
+    case "hasLabel":
+      return 2;
+    case "where":
+      return 7;
+    default:
+      Selectivity selectivity = schema.getSelectivity((String) step.getArgument(0));
+      boolean isEquality = !(step.getArgument(1) instanceof PropertyPredicate);
+      switch (selectivity) {
+      case UNIQUE:
+        return isEquality ? 0 : 1;
+      case INDEXED:
+        return 3;
+      case LOW:
+        return 6;
+      default:
+        return 4;
+      }
+    }
+  }
+
+  private static boolean isFilter(TraversalStep step) {
+    return "hasLabel".equals(step.getName()) || "where".equals(step.getName()) || isHas(step);
+  }
+
+  private static boolean isHas(TraversalStep step) {
+    return "has".equals(step.getName()) && step.getArguments().size() == 2;
+  }
+}
@@ -0,0 +1,106 @@
+package com.codionics;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Yields the queries for successive pages of the results of a spec, so that
+ * broad queries are fetched with constant memory.
+ *
+ * <p>
+ * An offset pager renders range(offset, offset + pageSize) on each page. A
+ * keyset pager orders the results on an indexed property and renders
+ * has(property, gt(lastKey)).order().by(property).limit(pageSize), which stays
+ * cheap on deep pages; it needs the key of the last result of every page,
+ * reported through {@link #onPageFetched(int, Object)}, before the next page.
+ * Both stop after a page with fewer results than the page size is reported.
+ */
+public class QueryPager implements Iterator<GremlinQueryBuilder> {
+  private final VertexOrEdgeSpec spec;
+  private final String keyProperty;
+  private final long pageSize;
+
+  private long offset;
+  private Object lastKey;
+  private boolean pending;
+  private boolean exhausted;
+
+  private QueryPager(VertexOrEdgeSpec spec, String keyProperty, long pageSize) {
+    Preconditions.checkArgument(pageSize > 0, "The page size must be positive.");
+    this.spec = spec.freeze();
+    this.keyProperty = keyProperty;
+    this.pageSize = pageSize;
+  }
+
+  public static QueryPager offset(VertexOrEdgeSpec spec, long pageSize) {
+    return new QueryPager(spec, null, pageSize);
+  }
+
+  /**
+   * Creates a keyset pager on the given property, which the spec must not
+   * filter on itself, since the key filter of every page after the first
+   * replaces it. The spec must return its own elements, not those of
+   * nested specs: the key filter is rendered on the spec's elements, whereas
+   * the ordering applies to the elements the traversal ends on.
+   */
+  public static QueryPager keyset(VertexOrEdgeSpec spec, String keyProperty, long pageSize) {
+    Preconditions.checkNotNull(keyProperty);
+    Preconditions.checkArgument(!hasNestedElements(spec), "Keyset paging does not support nested specs: %s", spec);
+    Preconditions.checkArgument(!filtersOn(spec, keyProperty), "The spec must not filter on the key property %s: %s",
+        keyProperty, spec);
+    return new QueryPager(spec, keyProperty, pageSize);
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !exhausted;
+  }
+
+  @Override
+  public GremlinQueryBuilder next() {
+    if (exhausted) {
+      throw new NoSuchElementException();
+    }
+    Preconditions.checkState(!pending || keyProperty == null,
+        "The last key of the previous page must be reported before the next keyset page.");
+
+    VertexOrEdgeSpec page;
+    if (keyProperty == null) {
+      page = spec.range(offset, offset + pageSize);
+      offset += pageSize;
+    } else {
+      VertexOrEdgeSpec filtered = lastKey == null ? spec : spec.has(keyProperty, PropertyPredicate.gt(lastKey));
+      page = filtered.orderBy(keyProperty).limit(pageSize);
+    }
+
+    pending = true;
+    return new GremlinQueryBuilder().withSpec(page);
+  }
+
+  /**
+   * Reports the number of results of the last page and, for keyset paging, the
+   * value of the key property of its last result, which a full page must have.
+   */
+  public void onPageFetched(int resultCount, Object lastResultKey) {
+    Preconditions.checkState(pending, "No page was requested.");
+    Preconditions.checkArgument(keyProperty == null || resultCount < pageSize || lastResultKey != null,
+        "The last key of a full keyset page must not be null.");
+    pending = false;
+    lastKey = lastResultKey;
+    exhausted = resultCount < pageSize;
+  }
+
+  private static boolean filtersOn(VertexOrEdgeSpec spec, String property) {
+    return spec.getTraversal().getSteps().stream().anyMatch(s -> "has".equals(s.getName()) && property.equals(
+        s.getArgument(0)));
+  }
+
+  private static boolean hasNestedElements(VertexOrEdgeSpec spec) {
+    if (spec instanceof EdgeSpec) {
+      return ((EdgeSpec) spec).hasInVertices() || ((EdgeSpec) spec).hasOutVertices();
+    }
+    return spec instanceof VertexSpec && ((VertexSpec) spec).hasNestedElements();
+  }
+}
@@ -0,0 +1,37 @@
+package com.codionics;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+/**
+ * A rendered query on its way to a {@link QueryTransport}: the parameterized
+ * script for transports that talk to a gremlin server, and the traversal it
+ * was rendered from for transports that evaluate traversals directly. The
+ * traversal is only built when a transport asks for it, at most once.
+ */
+public final class QueryRequest {
+  private final ParameterizedQuery query;
+  private final Supplier<Traversal> traversal;
+
+  public QueryRequest(ParameterizedQuery query, Traversal traversal) {
+    this(query, Suppliers.ofInstance(traversal));
+  }
+
+  public QueryRequest(ParameterizedQuery query, Supplier<Traversal> traversal) {
+    this.query = query;
+    this.traversal = Suppliers.memoize(traversal);
+  }
+
+  public ParameterizedQuery getQuery() {
+    return query;
+  }
+
+  public Traversal getTraversal() {
+    return traversal.get();
+  }
+
+  @Override
+  public String toString() {
+    return query.toString();
+  }
+}
@@ -0,0 +1,258 @@
+package com.codionics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A bounded cache of query results keyed by parameterized query and bindings.
+ * Entries expire a fixed time after they were loaded, and are tagged with the
+ * containers their traversal refers to and whether it reads the _isLatest
+ * flag, so a new version of a container invalidates only the entries it can
+ * affect. An entry is only scoped to containers when the elements it returns
+ * are restricted to containers; every other entry is affected by every
+ * container.
+ */
+public class QueryResultCache<R> {
+  private static final String CONTAINER = "container";
+  private static final String IS_LATEST = "_isLatest";
+  private static final Set<String> PROPERTY_STEPS = ImmutableSet.of("values", "valueMap", "project");
+  // steps that filter, order or project the current elements without moving to others
+  private static final Set<String> SAME_ELEMENT_STEPS = ImmutableSet.of("has", "hasLabel", "where", "or", "is",
+      "dedup", "simplePath", "order", "by", "range", "limit", "count", "fold", "id", "values", "valueMap",
+      "project");
+
+  private final Cache<ParameterizedQuery, Entry<R>> cache;
+  // indexed by entry rather than by key, so that the late removal of a replaced entry keeps its successor indexed
+  private final Map<String, Set<Entry<R>>> entriesByContainer = new ConcurrentHashMap<>();
+  private final Set<Entry<R>> unscopedEntries = ConcurrentHashMap.newKeySet();
+
+  public QueryResultCache(long maximumSize, long timeToLive, TimeUnit unit) {
+    this(maximumSize, timeToLive, unit, Ticker.systemTicker());
+  }
+
+  QueryResultCache(long maximumSize, long timeToLive, TimeUnit unit, Ticker ticker) {
+    Preconditions.checkArgument(maximumSize > 0, "The maximum size must be positive.");
+    Preconditions.checkArgument(timeToLive > 0, "The time to live must be positive.");
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterWrite(timeToLive, unit).ticker(ticker)
+        .removalListener(this::onRemoval).recordStats().build();
+  }
+
+  /**
+   * Returns the cached result of the spec's query, loading and caching it with
+   * the given loader when absent.
+   */
+  public R get(VertexOrEdgeSpec spec, Function<ParameterizedQuery, R> loader) {
+    Map<String, Object> bindings = new LinkedHashMap<>();
+    String query = spec.getQuery(bindings);
+    return get(new ParameterizedQuery(query, bindings), spec::getTraversal, loader);
+  }
+
+  public R get(GremlinQueryBuilder builder, Function<ParameterizedQuery, R> loader) {
+    return get(builder.getParameterizedQuery(), builder::getTraversal, loader);
+  }
+
+  public R getIfPresent(VertexOrEdgeSpec spec) {
+    Map<String, Object> bindings = new LinkedHashMap<>();
+    String query = spec.getQuery(bindings);
+    Entry<R> entry = cache.getIfPresent(new ParameterizedQuery(query, bindings));
+    return entry == null || entry.stale ? null : entry.result;
+  }
+
+  /**
+   * Invalidates the entries scoped to the given container, along with the
+   * unscoped entries. Call it when the container gets a new version, which
+   * adds elements as well as changing the _isLatest flags of the old ones.
+   */
+  public void invalidateContainer(String containerKey) {
+    invalidate(containerKey, false);
+  }
+
+  /**
+   * Invalidates only the entries that may see the given container and filter
+   * on or return the _isLatest flag. This is enough when nothing but the flags
+   * of the container's relations changed, e.g. when its latest version is
+   * switched back to an earlier one; a new version also adds elements, so use
+   * {@link #invalidateContainer(String)} for that.
+   */
+  public void invalidateLatestRelations(String containerKey) {
+    invalidate(containerKey, true);
+  }
+
+  public void invalidateAll() {
+    unscopedEntries.forEach(e -> e.stale = true);
+    entriesByContainer.values().forEach(entries -> entries.forEach(e -> e.stale = true));
+    cache.invalidateAll();
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  /**
+   * The traversal is only built when the entry is loaded, to tag it; hits need
+   * nothing but the rendered query. The entry is indexed before the loader
+   * runs, so an invalidation during the load marks it stale, and its result is
+   * returned without being cached.
+   */
+  private R get(ParameterizedQuery key, Supplier<Traversal> traversal, Function<ParameterizedQuery, R> loader) {
+    Entry<R> cached = cache.getIfPresent(key);
+    if (cached != null) {
+      if (!cached.stale) {
+        return cached.result;
+      }
+      cache.asMap().remove(key, cached);
+    }
+
+    Entry<R> loading = new Entry<>(key, traversal.get());
+    register(loading);
+    Entry<R> entry;
+    try {
+      entry = cache.get(key, () -> {
+        loading.result = Preconditions.checkNotNull(loader.apply(key), "The loader returned no result for %s", key);
+        return loading;
+      });
+    } catch (ExecutionException | UncheckedExecutionException e) {
+      unregister(loading);
+      Throwable cause = e.getCause();
+      throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+    }
+
+    if (entry != loading) {
+      // loaded by another caller in the meantime
+      unregister(loading);
+    } else if (loading.stale) {
+      cache.asMap().remove(key, loading);
+    }
+    return entry.result;
+  }
+
+  private void register(Entry<R> entry) {
+    if (entry.containers.isEmpty()) {
+      unscopedEntries.add(entry);
+    } else {
+      entry.containers.forEach(c -> entriesByContainer.computeIfAbsent(c, k -> ConcurrentHashMap.newKeySet())
+          .add(entry));
+    }
+  }
+
+  private void unregister(Entry<R> entry) {
+    if (entry.containers.isEmpty()) {
+      unscopedEntries.remove(entry);
+    }
+
+    entry.containers.forEach(c -> entriesByContainer.computeIfPresent(c, (k, entries) -> {
+      entries.remove(entry);
+      return entries.isEmpty() ? null : entries;
+    }));
+  }
+
+  private void invalidate(String containerKey, boolean latestOnly) {
+    List<Entry<R>> entries = new ArrayList<>(unscopedEntries);
+    entries.addAll(entriesByContainer.getOrDefault(containerKey, Collections.emptySet()));
+
+    for (Entry<R> entry : entries) {
+      if (!latestOnly || entry.readsLatest) {
+        entry.stale = true;
+        // only this entry: one loaded again since is not affected
+        cache.asMap().remove(entry.key, entry);
+      }
+    }
+  }
+
+  private void onRemoval(RemovalNotification<ParameterizedQuery, Entry<R>> notification) {
+    Entry<R> entry = notification.getValue();
+    if (entry != null) {
+      unregister(entry);
+    }
+  }
+
+  private static void collectTags(Traversal traversal, Entry<?> entry) {
+    for (TraversalStep step : traversal.getSteps()) {
+      List<Object> arguments = step.getArguments();
+
+      if ("has".equals(step.getName()) && arguments.size() == 2) {
+        if (CONTAINER.equals(arguments.get(0))) {
+          addContainers(arguments.get(1), entry);
+        } else if (IS_LATEST.equals(arguments.get(0))) {
+          entry.readsLatest = true;
+        }
+      } else if (PROPERTY_STEPS.contains(step.getName()) && (arguments.isEmpty() || arguments.contains(IS_LATEST))) {
+        entry.readsLatest = true;
+      }
+
+      arguments.stream().filter(a -> a instanceof Traversal).forEach(a -> collectTags((Traversal) a, entry));
+    }
+  }
+
+  /**
+   * Tells whether the elements the traversal ends on are restricted to
+   * containers. Restrictions on the elements it passes through on the way, or
+   * inside nested traversals, do not restrict the result.
+   */
+  private static boolean returnsContainerElements(Traversal traversal) {
+    boolean restricted = false;
+    for (TraversalStep step : traversal.getSteps()) {
+      List<Object> arguments = step.getArguments();
+      if (!SAME_ELEMENT_STEPS.contains(step.getName())) {
+        restricted = false;
+      } else if ("has".equals(step.getName()) && arguments.size() == 2 && CONTAINER.equals(arguments.get(0))) {
+        restricted = true;
+      }
+    }
+    return restricted;
+  }
+
+  private static void addContainers(Object value, Entry<?> entry) {
+    if (value instanceof PropertyPredicate) {
+      PropertyPredicate predicate = (PropertyPredicate) value;
+      if ("within".equals(predicate.getName())) {
+        predicate.getValues().forEach(v -> entry.containers.add(String.valueOf(v)));
+      }
+    } else {
+      entry.containers.add(String.valueOf(value));
+    }
+  }
+
+  /**
+   * Compared by identity, so the index tells apart the entries loaded for the
+   * same key.
+   */
+  private static final class Entry<R> {
+    private final ParameterizedQuery key;
+    private final Set<String> containers = new LinkedHashSet<>();
+    private boolean readsLatest;
+    private volatile R result;
+    private volatile boolean stale;
+
+    private Entry(ParameterizedQuery key, Traversal traversal) {
+      this.key = key;
+      collectTags(traversal, this);
+      if (!returnsContainerElements(traversal)) {
+        containers.clear();
+      }
+    }
+  }
+}
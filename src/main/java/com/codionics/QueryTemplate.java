@@ -0,0 +1,135 @@
+package com.codionics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.codionics.utils.GremlinLiterals;
+import com.google.common.base.Preconditions;
+
+/**
+ * An immutable, pre-rendered query for a particular spec shape. The query text
+ * is split into literal segments around the value slots, so rendering it again
+ * with new values only concatenates strings instead of walking the spec tree.
+ */
+public final class QueryTemplate {
+  private final String[] segments;
+  private final String[] slotNames;
+  private final Object[] defaultValues;
+  private final String parameterizedQuery;
+  private final int literalLength;
+
+  private QueryTemplate(String parameterizedQuery, String[] segments, String[] slotNames, Object[] defaultValues) {
+    this.parameterizedQuery = parameterizedQuery;
+    this.segments = segments;
+    this.slotNames = slotNames;
+    this.defaultValues = defaultValues;
+
+    int length = 0;
+    for (String segment : segments) {
+      length += segment.length();
+    }
+    this.literalLength = length;
+  }
+
+  public static QueryTemplate compile(ParameterizedQuery query) {
+    String text = query.getQuery();
+    Map<String, Object> bindings = query.getBindings();
+    List<String> segments = new ArrayList<>();
+    List<String> slotNames = new ArrayList<>();
+
+    int segmentStart = 0;
+    int i = 0;
+    boolean quoted = false;
+    while (i < text.length()) {
+      char c = text.charAt(i);
+      if (quoted) {
+        if (c == '\\') {
+          i++;
+        } else if (c == '\'') {
+          quoted = false;
+        }
+        i++;
+      } else if (c == '\'') {
+        quoted = true;
+        i++;
+      } else if (Character.isJavaIdentifierStart(c)) {
+        int start = i;
+        while (i < text.length() && Character.isJavaIdentifierPart(text.charAt(i))) {
+          i++;
+        }
+        String identifier = text.substring(start, i);
+        if (bindings.containsKey(identifier)) {
+          segments.add(text.substring(segmentStart, start));
+          slotNames.add(identifier);
+          segmentStart = i;
+        }
+      } else {
+        i++;
+      }
+    }
+    segments.add(text.substring(segmentStart));
+
+    Object[] defaultValues = new Object[slotNames.size()];
+    for (int slot = 0; slot < defaultValues.length; slot++) {
+      defaultValues[slot] = bindings.get(slotNames.get(slot));
+    }
+
+    return new QueryTemplate(text, segments.toArray(new String[0]), slotNames.toArray(new String[0]),
+        defaultValues);
+  }
+
+  public int getSlotCount() {
+    return slotNames.length;
+  }
+
+  public List<String> getSlotNames() {
+    return Arrays.asList(slotNames.clone());
+  }
+
+  public String getParameterizedQuery() {
+    return parameterizedQuery;
+  }
+
+  /**
+   * Renders the query with the values the template was compiled with.
+   */
+  public String render() {
+    return render(defaultValues);
+  }
+
+  /**
+   * Renders the query with the given values inlined, in slot order.
+   */
+  public String render(Object... values) {
+    checkSlotValues(values);
+
+    StringBuilder builder = new StringBuilder(literalLength + values.length * 16);
+    for (int slot = 0; slot < values.length; slot++) {
+      builder.append(segments[slot]);
+      GremlinLiterals.append(builder, values[slot]);
+    }
+    builder.append(segments[values.length]);
+    return builder.toString();
+  }
+
+  /**
+   * Binds the given values, in slot order, to the parameterized query text.
+   */
+  public ParameterizedQuery bind(Object... values) {
+    checkSlotValues(values);
+
+    Map<String, Object> bindings = new LinkedHashMap<>();
+    for (int slot = 0; slot < values.length; slot++) {
+      bindings.put(slotNames[slot], values[slot]);
+    }
+    return new ParameterizedQuery(parameterizedQuery, bindings);
+  }
+
+  private void checkSlotValues(Object[] values) {
+    Preconditions.checkArgument(values.length == slotNames.length, "Expected %s values but got %s.",
+        slotNames.length, values.length);
+  }
+}
@@ -0,0 +1,16 @@
+package com.codionics;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Sends queries to wherever they are evaluated, e.g. a gremlin server
+ * connection. Implementations must not block: the returned future completes
+ * with the results once they arrive, so that many requests can be in flight
+ * on one transport.
+ */
+@FunctionalInterface
+public interface QueryTransport {
+
+  public CompletableFuture<List<Object>> submit(QueryRequest request);
+}
@@ -0,0 +1,17 @@
+package com.codionics;
+
+/**
+ * Hook through which a {@link GremlinQueryBuilder} reports every rendered
+ * query. Implementations must be thread-safe, since one instance is usually
+ * shared by all builders.
+ */
+public interface RenderMetrics {
+
+  public static final RenderMetrics NOOP = new RenderMetrics() {
+    @Override
+    public void recordRender(long elapsedNanos, int queryLength) {
+    }
+  };
+
+  public void recordRender(long elapsedNanos, int queryLength);
+}
@@ -0,0 +1,98 @@
+package com.codionics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A lock-free {@link RenderMetrics} keeping the render count, a latency
+ * histogram with power-of-two nanosecond buckets and the output size.
+ */
+public class RenderStatistics implements RenderMetrics {
+  private static final int BUCKETS = 64;
+
+  private final LongAdder renderCount = new LongAdder();
+  private final LongAdder totalOutputSize = new LongAdder();
+  private final LongAccumulator maxOutputSize = new LongAccumulator(Math::max, 0);
+  private final AtomicLongArray latencyBuckets = new AtomicLongArray(BUCKETS);
+
+  @Override
+  public void recordRender(long elapsedNanos, int queryLength) {
+    renderCount.increment();
+    totalOutputSize.add(queryLength);
+    maxOutputSize.accumulate(queryLength);
+    latencyBuckets.incrementAndGet(bucketOf(elapsedNanos));
+  }
+
+  public long getRenderCount() {
+    return renderCount.sum();
+  }
+
+  public long getTotalOutputSize() {
+    return totalOutputSize.sum();
+  }
+
+  public long getMaxOutputSize() {
+    return maxOutputSize.get();
+  }
+
+  public double getMeanOutputSize() {
+    long count = getRenderCount();
+    return count == 0 ? 0 : (double) getTotalOutputSize() / count;
+  }
+
+  /**
+   * Returns the number of renders whose latency fell in the given bucket. The
+   * bucket i holds latencies in [2^(i-1), 2^i) nanoseconds, bucket 0 holds 0.
+   */
+  public long getLatencyBucketCount(int bucket) {
+    return latencyBuckets.get(bucket);
+  }
+
+  /**
+   * Returns an upper bound, in nanoseconds, for the latency at the given
+   * percentile (0 to 100), as resolved by the histogram buckets.
+   */
+  public long getLatencyPercentile(double percentile) {
+    Preconditions.checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be between 0 and 100.");
+
+    long[] counts = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = latencyBuckets.get(i);
+      total += counts[i];
+    }
+
+    long rank = (long) Math.ceil(total * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank && counts[i] > 0) {
+        return i == 0 ? 0 : (i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+      }
+    }
+
+    return 0;
+  }
+
+  public void reset() {
+    renderCount.reset();
+    totalOutputSize.reset();
+    maxOutputSize.reset();
+    for (int i = 0; i < BUCKETS; i++) {
+      latencyBuckets.set(i, 0);
+    }
+  }
+
+  private static int bucketOf(long elapsedNanos) {
+    return elapsedNanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(elapsedNanos));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("renders: %d, p50: %dns, p99: %dns, mean size: %.1f, max size: %d", getRenderCount(),
+        getLatencyPercentile(50), getLatencyPercentile(99), getMeanOutputSize(), getMaxOutputSize());
+  }
+}
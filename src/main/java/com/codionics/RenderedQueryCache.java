@@ -0,0 +1,46 @@
+package com.codionics;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * A bounded cache of rendered queries keyed by spec structure. Entries are
+ * weighed by the length of their query and evicted once the total exceeds the
+ * maximum weight. Specs are frozen before they are stored, so changing a spec
+ * after rendering it never corrupts the cache.
+ */
+public class RenderedQueryCache {
+  private final Cache<VertexOrEdgeSpec, String> cache;
+
+  public RenderedQueryCache(long maximumWeight) {
+    Preconditions.checkArgument(maximumWeight > 0, "The maximum weight must be positive.");
+    this.cache = CacheBuilder.newBuilder().maximumWeight(maximumWeight)
+        .weigher((VertexOrEdgeSpec spec, String query) -> query.length()).recordStats().build();
+  }
+
+  public String getQuery(VertexOrEdgeSpec spec) {
+    String query = cache.getIfPresent(spec);
+
+    if (query == null) {
+      VertexOrEdgeSpec frozen = spec.freeze();
+      query = frozen.getQuery();
+      cache.put(frozen, query);
+    }
+
+    return query;
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+}
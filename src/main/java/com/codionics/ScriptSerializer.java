@@ -0,0 +1,90 @@
+package com.codionics;
+
+import java.util.List;
+import java.util.Map;
+
+import com.codionics.utils.GremlinLiterals;
+
+/**
+ * Serializes a {@link Traversal} to the gremlin script format produced by the
+ * specs, e.g. g.E().hasLabel('Relation').where(outV().has('sid', 'ID-1')).
+ */
+public final class ScriptSerializer {
+
+  private ScriptSerializer() {
+  }
+
+  public static String serialize(Traversal traversal) {
+    return serialize(traversal, null);
+  }
+
+  /**
+   * Serializes the traversal with the values of has() steps and the bounds of
+   * range() and limit() steps bound as parameters (p0, p1, ...) when bindings
+   * is not null, like
+   * {@link VertexOrEdgeSpec#getQuery(Map)} does.
+   */
+  public static String serialize(Traversal traversal, Map<String, Object> bindings) {
+    StringBuilder builder = new StringBuilder(64);
+    appendTo(builder, traversal, bindings);
+    return builder.toString();
+  }
+
+  public static void appendTo(StringBuilder builder, Traversal traversal, Map<String, Object> bindings) {
+    List<TraversalStep> steps = traversal.getSteps();
+    if (steps.isEmpty()) {
+      return;
+    }
+
+    if (!traversal.isAnonymous()) {
+      builder.append("g.");
+    } else if (isStartStep(steps.get(0))) {
+      builder.append("__.");
+    }
+
+    for (int i = 0; i < steps.size(); i++) {
+      if (i > 0) {
+        builder.append('.');
+      }
+      appendStep(builder, steps.get(i), bindings);
+    }
+  }
+
+  private static void appendStep(StringBuilder builder, TraversalStep step, Map<String, Object> bindings) {
+    builder.append(step.getName()).append('(');
+    List<Object> arguments = step.getArguments();
+    for (int i = 0; i < arguments.size(); i++) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+
+      Object argument = arguments.get(i);
+      if (argument instanceof Traversal) {
+        appendTo(builder, (Traversal) argument, bindings);
+      } else if (argument instanceof PropertyPredicate) {
+        ((PropertyPredicate) argument).appendTo(builder, bindings);
+      } else if (bindings != null && isBound(step, i, argument)) {
+        builder.append(ParameterizedQuery.bind(bindings, argument));
+      } else {
+        GremlinLiterals.appendQuoted(builder, argument);
+      }
+    }
+    builder.append(')');
+  }
+
+  private static boolean isBound(TraversalStep step, int index, Object argument) {
+    switch (step.getName()) {
+    case "has":
+      return index == 1;
+    case "range":
+    case "limit":
+      return argument instanceof Number;
+    default:
+      return false;
+    }
+  }
+
+  private static boolean isStartStep(TraversalStep step) {
+    return "V".equals(step.getName()) || "E".equals(step.getName());
+  }
+}
@@ -0,0 +1,92 @@
+package com.codionics;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The specs of a query builder, in the order they were added, in an array.
+ * Placeholders added by vertices() and edges() are remembered by position, so
+ * replacing the first one of a kind takes constant time instead of an equality
+ * scan over every spec: the placeholder is cleared in place and skipped when
+ * iterating.
+ */
+final class SpecList implements Iterable<VertexOrEdgeSpec> {
+  private VertexOrEdgeSpec[] specs = new VertexOrEdgeSpec[4];
+  private int length;
+  private int cleared;
+  private ArrayDeque<Integer> vertexPlaceholders;
+  private ArrayDeque<Integer> edgePlaceholders;
+
+  void add(VertexOrEdgeSpec spec) {
+    if (length == specs.length) {
+      specs = Arrays.copyOf(specs, length * 2);
+    }
+    specs[length++] = spec;
+  }
+
+  void addVertexPlaceholder(VertexSpec placeholder) {
+    if (vertexPlaceholders == null) {
+      vertexPlaceholders = new ArrayDeque<>();
+    }
+    vertexPlaceholders.add(length);
+    add(placeholder);
+  }
+
+  void addEdgePlaceholder(EdgeSpec placeholder) {
+    if (edgePlaceholders == null) {
+      edgePlaceholders = new ArrayDeque<>();
+    }
+    edgePlaceholders.add(length);
+    add(placeholder);
+  }
+
+  void removeVertexPlaceholder() {
+    clearFirst(vertexPlaceholders);
+  }
+
+  void removeEdgePlaceholder() {
+    clearFirst(edgePlaceholders);
+  }
+
+  int size() {
+    return length - cleared;
+  }
+
+  @Override
+  public Iterator<VertexOrEdgeSpec> iterator() {
+    return new Iterator<VertexOrEdgeSpec>() {
+      private int next = skipCleared(0);
+
+      @Override
+      public boolean hasNext() {
+        return next < length;
+      }
+
+      @Override
+      public VertexOrEdgeSpec next() {
+        if (next >= length) {
+          throw new NoSuchElementException();
+        }
+        VertexOrEdgeSpec spec = specs[next];
+        next = skipCleared(next + 1);
+        return spec;
+      }
+    };
+  }
+
+  private int skipCleared(int index) {
+    while (index < length && specs[index] == null) {
+      index++;
+    }
+    return index;
+  }
+
+  private void clearFirst(ArrayDeque<Integer> placeholders) {
+    if (placeholders != null && !placeholders.isEmpty()) {
+      specs[placeholders.poll()] = null;
+      cleared++;
+    }
+  }
+}
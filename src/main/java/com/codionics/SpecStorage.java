@@ -0,0 +1,59 @@
+package com.codionics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Helpers for the lazily allocated storage of specs: child lists and property
+ * maps stay null until the first element is added, so a spec only pays for
+ * what it uses.
+ */
+final class SpecStorage {
+  private static final int INITIAL_CHILDREN = 2;
+
+  private SpecStorage() {
+  }
+
+  static <T> List<T> add(List<T> list, T element) {
+    List<T> result = list != null ? list : new ArrayList<>(INITIAL_CHILDREN);
+    result.add(element);
+    return result;
+  }
+
+  static <T> List<T> copy(List<T> list) {
+    return list != null ? new ArrayList<>(list) : null;
+  }
+
+  static <T> void replaceAll(List<T> list, UnaryOperator<T> operator) {
+    if (list != null) {
+      list.replaceAll(operator);
+    }
+  }
+
+  static <T> List<T> orEmpty(List<T> list) {
+    return list != null ? list : Collections.emptyList();
+  }
+
+  static CompactPropertyMap put(CompactPropertyMap map, String key, Object value) {
+    CompactPropertyMap result = map != null ? map : new CompactPropertyMap();
+    result.put(key, value);
+    return result;
+  }
+
+  static CompactPropertyMap copy(CompactPropertyMap map) {
+    return map != null ? new CompactPropertyMap(map) : null;
+  }
+
+  static Map<String, Object> orEmpty(CompactPropertyMap map) {
+    return map != null ? map : Collections.emptyMap();
+  }
+
+  static void seal(CompactPropertyMap map) {
+    if (map != null) {
+      map.seal();
+    }
+  }
+}
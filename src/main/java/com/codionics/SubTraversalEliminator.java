@@ -0,0 +1,194 @@
+package com.codionics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import com.codionics.IndexSchema.Selectivity;
+import com.google.common.base.Preconditions;
+
+/**
+ * Rewrites a traversal so that identical sub-traversals are evaluated once:
+ * <ul>
+ * <li>a where() or has() filter repeated without a navigation step in between
+ * is dropped, since filtering twice is the same as filtering once; navigation
+ * steps are never dropped, as inV().inV() is not the same as inV();</li>
+ * <li>in a traversal started by inject(), as batch queries are, vertex filters
+ * like where(outV().has('sid', 'a')) used by several branches are evaluated
+ * once into a side-effect by sideEffect(__.V().has('sid', 'a').aggregate('cse0')),
+ * and every use becomes where(outV().where(within('cse0'))). Only filters with
+ * an equality or within() lookup on a unique or indexed property of the
+ * {@link IndexSchema} are hoisted; hoisting a filter like hasLabel('a') alone
+ * would scan and hold every matching vertex instead of checking one per edge.</li>
+ * </ul>
+ * The rewritten traversal returns the same results as the original one.
+ */
+public class SubTraversalEliminator {
+  private static final String KEY_PREFIX = "cse";
+
+  private final IndexSchema schema;
+
+  public SubTraversalEliminator() {
+    this(IndexSchema.defaultSchema());
+  }
+
+  public SubTraversalEliminator(IndexSchema schema) {
+    this.schema = Preconditions.checkNotNull(schema);
+  }
+
+  public Traversal eliminate(Traversal traversal) {
+    Traversal deduplicated = deduplicate(traversal);
+    List<TraversalStep> steps = deduplicated.getSteps();
+    if (deduplicated.isAnonymous() || steps.isEmpty() || !"inject".equals(steps.get(0).getName())) {
+      return deduplicated;
+    }
+
+    Map<List<TraversalStep>, Integer> counts = new LinkedHashMap<>();
+    countVertexFilters(deduplicated, counts);
+    Map<List<TraversalStep>, String> keys = new LinkedHashMap<>();
+    counts.forEach((filters, count) -> {
+      if (count > 1 && isSelective(filters)) {
+        keys.put(filters, KEY_PREFIX + keys.size());
+      }
+    });
+
+    if (keys.isEmpty()) {
+      return deduplicated;
+    }
+
+    List<TraversalStep> hoisted = new ArrayList<>(steps.size() + keys.size());
+    hoisted.add(steps.get(0));
+    keys.forEach((filters, key) -> {
+      Traversal shared = Traversal.anonymous().addStep("V");
+      filters.forEach(shared::addStep);
+      hoisted.add(new TraversalStep("sideEffect", shared.addStep("aggregate", key)));
+    });
+    for (TraversalStep step : steps.subList(1, steps.size())) {
+      hoisted.add(replaceVertexFilters(step, keys));
+    }
+    return deduplicated.withSteps(hoisted);
+  }
+
+  private Traversal deduplicate(Traversal traversal) {
+    List<TraversalStep> steps = new ArrayList<>(traversal.getSteps().size());
+    for (TraversalStep step : traversal.getSteps()) {
+      steps.add(mapNested(step, this::deduplicate));
+    }
+
+    return traversal.withSteps(dropRepeatedFilters(steps));
+  }
+
+  private static List<TraversalStep> dropRepeatedFilters(List<TraversalStep> steps) {
+    List<TraversalStep> kept = new ArrayList<>(steps.size());
+    Set<TraversalStep> filters = new LinkedHashSet<>();
+    for (TraversalStep step : steps) {
+      if (!isFilter(step)) {
+        filters.clear();
+        kept.add(step);
+      } else if (filters.add(step)) {
+        kept.add(step);
+      }
+    }
+    return kept;
+  }
+
+  private static void countVertexFilters(Traversal traversal, Map<List<TraversalStep>, Integer> counts) {
+    for (TraversalStep step : traversal.getSteps()) {
+      List<TraversalStep> filters = vertexFilters(step);
+      if (filters != null) {
+        counts.merge(filters, 1, Integer::sum);
+      }
+
+      step.getArguments().stream().filter(a -> a instanceof Traversal).forEach(a -> countVertexFilters((Traversal) a,
+          counts));
+    }
+  }
+
+  private static TraversalStep replaceVertexFilters(TraversalStep step, Map<List<TraversalStep>, String> keys) {
+    List<TraversalStep> filters = vertexFilters(step);
+    String key = filters == null ? null : keys.get(filters);
+    if (key != null) {
+      TraversalStep navigation = ((Traversal) step.getArgument(0)).getSteps().get(0);
+      return new TraversalStep("where", Traversal.anonymous().addStep(navigation).addStep("where",
+          PropertyPredicate.withinSideEffect(key)));
+    }
+
+    return mapNested(step, nested -> {
+      List<TraversalStep> steps = new ArrayList<>(nested.getSteps().size());
+      nested.getSteps().forEach(s -> steps.add(replaceVertexFilters(s, keys)));
+      return nested.withSteps(steps);
+    });
+  }
+
+  /**
+   * Returns the filters of a where(inV()/outV() filters...) step, or null when
+   * the step is not a vertex filter.
+   */
+  private static List<TraversalStep> vertexFilters(TraversalStep step) {
+    if (!"where".equals(step.getName()) || !(step.getArgument(0) instanceof Traversal)) {
+      return null;
+    }
+
+    List<TraversalStep> steps = ((Traversal) step.getArgument(0)).getSteps();
+    if (steps.size() < 2 || !isEdgeVertexStep(steps.get(0))) {
+      return null;
+    }
+
+    for (TraversalStep filter : steps.subList(1, steps.size())) {
+      if (!isFilter(filter) || "where".equals(filter.getName())) {
+        return null;
+      }
+    }
+    return new ArrayList<>(steps.subList(1, steps.size()));
+  }
+
+  private boolean isSelective(List<TraversalStep> filters) {
+    for (TraversalStep filter : filters) {
+      if (!"has".equals(filter.getName()) || !(filter.getArgument(0) instanceof String)) {
+        continue;
+      }
+
+      Selectivity selectivity = schema.getSelectivity((String) filter.getArgument(0));
+      Object value = filter.getArgument(1);
+      boolean isLookup = !(value instanceof PropertyPredicate) || "within".equals(((PropertyPredicate) value).getName());
+      if (isLookup && (selectivity == Selectivity.UNIQUE || selectivity == Selectivity.INDEXED)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static TraversalStep mapNested(TraversalStep step, UnaryOperator<Traversal> mapper) {
+    List<Object> arguments = step.getArguments();
+    if (arguments.stream().noneMatch(a -> a instanceof Traversal)) {
+      return step;
+    }
+
+    Object[] mapped = new Object[arguments.size()];
+    for (int i = 0; i < mapped.length; i++) {
+      Object argument = arguments.get(i);
+      mapped[i] = argument instanceof Traversal ? mapper.apply((Traversal) argument) : argument;
+    }
+    return new TraversalStep(step.getName(), mapped);
+  }
+
+  private static boolean isEdgeVertexStep(TraversalStep step) {
+    return ("inV".equals(step.getName()) || "outV".equals(step.getName())) && step.getArguments().isEmpty();
+  }
+
+  private static boolean isFilter(TraversalStep step) {
+    switch (step.getName()) {
+    case "hasLabel":
+    case "where":
+      return true;
+    case "has":
+      return step.getArguments().size() == 2;
+    default:
+      return false;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.codionics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Objects;
+
+/**
+ * An ordered list of traversal steps, either spawned from the traversal source
+ * g or anonymous (__), as used inside where(). This is the structured form of
+ * a query, which {@link ScriptSerializer} turns into the gremlin script and
+ * {@link GraphSONBytecodeSerializer} into gremlin bytecode.
+ */
+public final class Traversal {
+  private final boolean anonymous;
+  private final List<TraversalStep> steps;
+
+  private Traversal(boolean anonymous, List<TraversalStep> steps) {
+    this.anonymous = anonymous;
+    this.steps = steps;
+  }
+
+  public static Traversal fromSource() {
+    return new Traversal(false, new ArrayList<>());
+  }
+
+  public static Traversal anonymous() {
+    return new Traversal(true, new ArrayList<>());
+  }
+
+  public Traversal addStep(String name, Object... arguments) {
+    return addStep(new TraversalStep(name, arguments));
+  }
+
+  public Traversal addStep(TraversalStep step) {
+    this.steps.add(step);
+    return this;
+  }
+
+  public boolean isAnonymous() {
+    return anonymous;
+  }
+
+  public List<TraversalStep> getSteps() {
+    return Collections.unmodifiableList(steps);
+  }
+
+  /**
+   * Returns a traversal of the same kind with the given steps.
+   */
+  public Traversal withSteps(List<TraversalStep> steps) {
+    return new Traversal(anonymous, new ArrayList<>(steps));
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof Traversal) {
+      Traversal that = (Traversal) obj;
+      return this.anonymous == that.anonymous && Objects.equal(this.steps, that.steps);
+    }
+
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(this.anonymous, this.steps);
+  }
+
+  @Override
+  public String toString() {
+    return ScriptSerializer.serialize(this);
+  }
+}
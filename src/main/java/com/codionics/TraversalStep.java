@@ -0,0 +1,55 @@
+package com.codionics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Objects;
+
+/**
+ * One step of a {@link Traversal}: the step name and its typed arguments. An
+ * argument is a String, a Number, a {@link PropertyPredicate} or a nested,
+ * anonymous {@link Traversal}.
+ */
+public final class TraversalStep {
+  private final String name;
+  private final List<Object> arguments;
+
+  public TraversalStep(String name, Object... arguments) {
+    this.name = name;
+    this.arguments = arguments.length == 0 ? Collections.emptyList()
+        : Collections.unmodifiableList(Arrays.asList(arguments.clone()));
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public List<Object> getArguments() {
+    return arguments;
+  }
+
+  public Object getArgument(int index) {
+    return arguments.get(index);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof TraversalStep) {
+      TraversalStep that = (TraversalStep) obj;
+      return Objects.equal(this.name, that.name) && Objects.equal(this.arguments, that.arguments);
+    }
+
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(this.name, this.arguments);
+  }
+
+  @Override
+  public String toString() {
+    return name + arguments;
+  }
+}
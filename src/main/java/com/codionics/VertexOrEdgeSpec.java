@@ -1,13 +1,132 @@
 package com.codionics;
 
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import com.codionics.utils.GremlinLiterals;
+import com.codionics.utils.Utf8Buffers;
+
 public interface VertexOrEdgeSpec {
 
-  public String getQuery();
+  /**
+   * Returns an immutable copy of this spec, or the spec itself when it is
+   * already frozen.
+   */
+  public VertexOrEdgeSpec freeze();
+
+  public boolean isFrozen();
+
+  public VertexOrEdgeSpec has(String property, PropertyPredicate predicate);
+
+  /**
+   * Orders the results by the given property, in ascending order.
+   */
+  public VertexOrEdgeSpec orderBy(String property);
+
+  /**
+   * Keeps the results from the low index (inclusive) to the high index
+   * (exclusive).
+   */
+  public VertexOrEdgeSpec range(long low, long high);
+
+  public VertexOrEdgeSpec limit(long limit);
+
+  /**
+   * Ends the query with the given terminal step, so that only what the caller
+   * needs is returned. See {@link Projection}.
+   */
+  public VertexOrEdgeSpec withProjection(Projection projection);
+
+  /**
+   * Returns the terminal step of this spec, or null when it has none.
+   */
+  public Projection getProjection();
+
+  /**
+   * Writes the whole traversal for this spec into the given buffer, with the
+   * property values inlined.
+   */
+  default void appendTo(StringBuilder builder) {
+    appendTo(builder, null);
+  }
+
+  /**
+   * Writes the whole traversal for this spec into the given buffer. When
+   * bindings is not null, every property value is replaced by a parameter name
+   * (p0, p1, ... in rendering order) and the value is added to the bindings.
+   */
+  public void appendTo(StringBuilder builder, Map<String, Object> bindings);
+
+  /**
+   * Adds the steps of this spec, including its nested specs, to the given
+   * traversal.
+   */
+  public void appendTo(Traversal traversal);
+
+  /**
+   * Returns the structured form of the query as a list of traversal steps.
+   */
+  default Traversal getTraversal() {
+    Traversal traversal = Traversal.fromSource();
+    appendTo(traversal);
+    return traversal;
+  }
+
+  default String getQuery() {
+    StringBuilder builder = new StringBuilder(64);
+    appendTo(builder);
+    return builder.toString();
+  }
+
+  /**
+   * Renders the query with every property value replaced by a parameter name.
+   * Parameters are named p0, p1, ... in rendering order and the values are
+   * added to the given bindings map.
+   */
+  default String getQuery(Map<String, Object> bindings) {
+    StringBuilder builder = new StringBuilder(64);
+    appendTo(builder, bindings);
+    return builder.toString();
+  }
 
+  /**
+   * Writes the query as UTF-8 at the position of the target buffer and returns
+   * the number of bytes written, without creating an intermediate String.
+   *
+   * @throws java.nio.BufferOverflowException when the query does not fit; the
+   *           buffer is left unchanged
+   */
+  default int writeUtf8(ByteBuffer target) {
+    StringBuilder builder = Utf8Buffers.scratch();
+    appendTo(builder);
+    return Utf8Buffers.write(builder, target);
+  }
+
+  /**
+   * Writes the query as UTF-8 like {@link #writeUtf8(ByteBuffer)}, moving the
+   * contents to a larger buffer when it does not fit. Returns the buffer that
+   * was written to.
+   */
+  default ByteBuffer appendUtf8(ByteBuffer target) {
+    StringBuilder builder = Utf8Buffers.scratch();
+    appendTo(builder);
+    return Utf8Buffers.writeGrowing(builder, target);
+  }
+
+  /**
+   * @deprecated the label is not escaped when formatted; specs render labels
+   *             with {@link GremlinLiterals#appendString}
+   */
+  @Deprecated
   default String getLabelFormat() {
     return ".hasLabel('%s')";
   }
 
+  /**
+   * @deprecated values are not escaped when formatted; specs render values
+   *             with {@link GremlinLiterals#appendQuoted}
+   */
+  @Deprecated
   default String getPropertyFormat() {
     return ".has('%s', '%s')";
   }
@@ -15,4 +134,74 @@ public interface VertexOrEdgeSpec {
   default String getWhereFormat() {
     return ".where(%s)";
   }
+
+  default String bindParameter(Map<String, Object> bindings, Object value) {
+    return ParameterizedQuery.bind(bindings, value);
+  }
+
+  default void appendLabel(StringBuilder builder, String label) {
+    builder.append(".hasLabel(");
+    GremlinLiterals.appendString(builder, label);
+    builder.append(')');
+  }
+
+  default void appendProperties(StringBuilder builder, Map<String, Object> propertyValues,
+      Map<String, Object> bindings) {
+    propertyValues.forEach((key, value) -> {
+      builder.append(".has(");
+      GremlinLiterals.appendString(builder, key);
+      builder.append(", ");
+      if (value instanceof PropertyPredicate) {
+        ((PropertyPredicate) value).appendTo(builder, bindings);
+      } else if (bindings == null) {
+        GremlinLiterals.appendQuoted(builder, value);
+      } else {
+        builder.append(bindParameter(bindings, value));
+      }
+      builder.append(')');
+    });
+  }
+
+  default void appendPaging(StringBuilder builder, String orderProperty, long rangeLow, long rangeHigh,
+      Map<String, Object> bindings) {
+    if (orderProperty != null) {
+      builder.append(".order().by(");
+      GremlinLiterals.appendString(builder, orderProperty);
+      builder.append(')');
+    }
+
+    if (rangeHigh >= 0) {
+      if (rangeLow == 0) {
+        builder.append(".limit(");
+      } else {
+        builder.append(".range(");
+        appendNumber(builder, rangeLow, bindings);
+        builder.append(", ");
+      }
+      appendNumber(builder, rangeHigh, bindings);
+      builder.append(')');
+    }
+  }
+
+  default void appendPaging(Traversal traversal, String orderProperty, long rangeLow, long rangeHigh) {
+    if (orderProperty != null) {
+      traversal.addStep("order").addStep("by", orderProperty);
+    }
+
+    if (rangeHigh >= 0) {
+      if (rangeLow == 0) {
+        traversal.addStep("limit", rangeHigh);
+      } else {
+        traversal.addStep("range", rangeLow, rangeHigh);
+      }
+    }
+  }
+
+  default void appendNumber(StringBuilder builder, long number, Map<String, Object> bindings) {
+    if (bindings == null) {
+      builder.append(number);
+    } else {
+      builder.append(bindParameter(bindings, number));
+    }
+  }
 }
@@ -1,7 +1,6 @@
 package com.codionics;
 
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -11,111 +10,313 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Objects;
 import com.codionics.utils.StringUtils;
 
+/**
+ * Specification of the vertices to look for. A spec is a mutable builder until
+ * {@link #freeze()} is called; the frozen spec is immutable, every mutator on it
+ * returns a new frozen spec sharing the unchanged children, and it can be cached
+ * and rendered concurrently once safely published.
+ */
 public class VertexSpec implements VertexOrEdgeSpec, StringUtils {
-  private final Logger logger = Logger.getLogger(VertexSpec.class);
+  private static final Logger logger = Logger.getLogger(VertexSpec.class);
 
   private String label;
   private boolean isInV;
   private boolean isOutV;
-  private List<EdgeSpec> inEdgesSpecs = new LinkedList<>();
-  private List<EdgeSpec> outEdgesSpecs = new LinkedList<>();
-  private Map<String, String> propertyValues = new LinkedHashMap<>();
+  private List<EdgeSpec> inEdgesSpecs;
+  private List<EdgeSpec> outEdgesSpecs;
+  private CompactPropertyMap propertyValues;
+  private String orderProperty;
+  private long rangeLow = -1;
+  private long rangeHigh = -1;
+  private PathSpec path;
+  private Projection projection;
+  private boolean frozen;
+  private int frozenHashCode;
+  private FragmentCache fragmentCache;
+
+  public VertexSpec() {
+  }
+
+  private VertexSpec(VertexSpec other) {
+    this.label = other.label;
+    this.isInV = other.isInV;
+    this.isOutV = other.isOutV;
+    this.inEdgesSpecs = SpecStorage.copy(other.inEdgesSpecs);
+    this.outEdgesSpecs = SpecStorage.copy(other.outEdgesSpecs);
+    this.propertyValues = SpecStorage.copy(other.propertyValues);
+    this.orderProperty = other.orderProperty;
+    this.rangeLow = other.rangeLow;
+    this.rangeHigh = other.rangeHigh;
+    this.path = other.path;
+    this.projection = other.projection;
+  }
 
   public VertexSpec hasLabel(String label) {
-    this.label = label;
-    return this;
+    VertexSpec spec = mutable();
+    spec.label = label;
+    return result(spec);
   }
 
   public VertexSpec hasKey(String key) {
-    this.propertyValues.put("sKey", key);
-    return this;
+    return has("sKey", key);
   }
 
   public VertexSpec hasId(String id) {
-    this.propertyValues.put("sid", id);
-    return this;
+    return has("sid", id);
   }
 
   public VertexSpec hasExternalId(String externalId) {
-    this.propertyValues.put("externalId", externalId);
-    return this;
+    return has("externalId", externalId);
   }
 
   public VertexSpec hasExternalKey(String externalKey) {
-    this.propertyValues.put("externalKey", externalKey);
-    return this;
+    return has("externalKey", externalKey);
   }
 
   public VertexSpec hasType(String type) {
-    this.propertyValues.put("type", type);
-    return this;
+    return has("type", type);
   }
 
   public VertexSpec hasVersion(String version) {
-    this.propertyValues.put("version", version);
-    return this;
+    return has("version", version);
   }
 
   public VertexSpec has(String property, String value) {
-    this.propertyValues.put(property, value);
-    return this;
+    VertexSpec spec = mutable();
+    spec.propertyValues = SpecStorage.put(spec.propertyValues, property, value);
+    return result(spec);
+  }
+
+  @Override
+  public VertexSpec has(String property, PropertyPredicate predicate) {
+    VertexSpec spec = mutable();
+    spec.propertyValues = SpecStorage.put(spec.propertyValues, property, Preconditions.checkNotNull(predicate));
+    return result(spec);
+  }
+
+  public VertexSpec hasIn(String property, Collection<String> values) {
+    return has(property, PropertyPredicate.within(values));
+  }
+
+  public VertexSpec hasKeyIn(Collection<String> keys) {
+    return hasIn("sKey", keys);
+  }
+
+  public VertexSpec hasIdIn(Collection<String> ids) {
+    return hasIn("sid", ids);
   }
 
   public VertexSpec isInV() {
-    this.isInV = true;
-    return this;
+    VertexSpec spec = mutable();
+    spec.isInV = true;
+    return result(spec);
   }
 
   public VertexSpec isOutV() {
-    this.isOutV = true;
-    return this;
+    VertexSpec spec = mutable();
+    spec.isOutV = true;
+    return result(spec);
   }
 
   public VertexSpec inE(EdgeSpec edgeSpec) {
-    EdgeSpec withInE = edgeSpec.isInE();
-    this.inEdgesSpecs.add(withInE);
-    return this;
+    VertexSpec spec = mutable();
+    EdgeSpec withInE = frozen ? edgeSpec.freeze().isInE() : edgeSpec.isInE();
+    spec.inEdgesSpecs = SpecStorage.add(spec.inEdgesSpecs, withInE);
+    withInE.addParent(spec.fragmentCache());
+    return result(spec);
   }
 
   public VertexSpec outE(EdgeSpec edgeSpec) {
-    EdgeSpec withOutE = edgeSpec.isOutE();
-    this.outEdgesSpecs.add(withOutE);
-    return this;
+    VertexSpec spec = mutable();
+    EdgeSpec withOutE = frozen ? edgeSpec.freeze().isOutE() : edgeSpec.isOutE();
+    spec.outEdgesSpecs = SpecStorage.add(spec.outEdgesSpecs, withOutE);
+    withOutE.addParent(spec.fragmentCache());
+    return result(spec);
+  }
+
+  /**
+   * Walks the given multi-hop path from the matching vertices, after any
+   * nested edge specs.
+   */
+  public VertexSpec path(PathSpec path) {
+    VertexSpec spec = mutable();
+    spec.path = path;
+    return result(spec);
+  }
+
+  @Override
+  public VertexSpec orderBy(String property) {
+    VertexSpec spec = mutable();
+    spec.orderProperty = property;
+    return result(spec);
+  }
+
+  @Override
+  public VertexSpec range(long low, long high) {
+    Preconditions.checkArgument(low >= 0 && low <= high, "Invalid range [%s, %s).", low, high);
+    VertexSpec spec = mutable();
+    spec.rangeLow = low;
+    spec.rangeHigh = high;
+    return result(spec);
+  }
+
+  @Override
+  public VertexSpec limit(long limit) {
+    return range(0, limit);
+  }
+
+  @Override
+  public VertexSpec withProjection(Projection projection) {
+    VertexSpec spec = mutable();
+    spec.projection = projection;
+    return result(spec);
+  }
+
+  @Override
+  public Projection getProjection() {
+    return projection;
+  }
+
+  public VertexSpec values(String... keys) {
+    return withProjection(Projection.values(keys));
+  }
+
+  public VertexSpec valueMap(String... keys) {
+    return withProjection(Projection.valueMap(keys));
+  }
+
+  public VertexSpec id() {
+    return withProjection(Projection.id());
+  }
+
+  public VertexSpec count() {
+    return withProjection(Projection.count());
+  }
+
+  public VertexSpec project(String... keys) {
+    return withProjection(Projection.project(keys));
+  }
+
+  /**
+   * Returns an immutable copy of this spec, with all its nested edge specs
+   * frozen as well. A spec that is already frozen is returned as is.
+   */
+  @Override
+  public VertexSpec freeze() {
+    if (frozen) {
+      return this;
+    }
+
+    VertexSpec spec = new VertexSpec(this);
+    SpecStorage.replaceAll(spec.inEdgesSpecs, EdgeSpec::freeze);
+    SpecStorage.replaceAll(spec.outEdgesSpecs, EdgeSpec::freeze);
+    return spec.seal();
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return frozen;
   }
 
   public boolean isEmpty() {
     boolean hasNoProperties = propertyValues == null || propertyValues.isEmpty();
-    logger.debug("hasNoProperties: " + hasNoProperties);
+    if (logger.isDebugEnabled()) {
+      logger.debug("hasNoProperties: " + hasNoProperties);
+    }
     return isNullOrEmpty(label) && hasNoProperties;
   }
 
+  /**
+   * Renders the query once and returns it from then on, until this spec or one
+   * of its nested specs changes.
+   */
   @Override
   public String getQuery() {
-    String query = getVertexString();
-    StringBuilder builder = new StringBuilder(query);
+    FragmentCache cache = fragmentCache();
+    String query = cache.get();
+    if (query == null) {
+      StringBuilder builder = new StringBuilder(64);
+      render(builder, null);
+      query = builder.toString();
+      cache.set(query);
+    }
+    return query;
+  }
+
+  /**
+   * Appends the cached fragment when there is one. Inline renders of nested
+   * specs are cached for their next render; frozen specs are rendered once,
+   * when they are frozen.
+   */
+  @Override
+  public void appendTo(StringBuilder builder, Map<String, Object> bindings) {
+    if (bindings != null) {
+      render(builder, bindings);
+      return;
+    }
+
+    String fragment = fragmentCache == null ? null : fragmentCache.get();
+    if (fragment != null) {
+      builder.append(fragment);
+    } else if (fragmentCache != null && fragmentCache.hasParents()) {
+      int start = builder.length();
+      render(builder, null);
+      fragmentCache().set(builder.substring(start));
+    } else {
+      render(builder, null);
+    }
+  }
 
-    String labelString = isNullOrEmpty(this.label) ? "" : getLabelString();
-    String propertiesString = (propertyValues == null || propertyValues.isEmpty()) ? "" : getPropertiesString();
-    String inE = (inEdgesSpecs == null || inEdgesSpecs.isEmpty()) ? "" : getEdgeQuery(this.inEdgesSpecs);
-    String outE = (outEdgesSpecs == null || outEdgesSpecs.isEmpty()) ? "" : getEdgeQuery(this.outEdgesSpecs);
+  private void render(StringBuilder builder, Map<String, Object> bindings) {
+    appendVertexString(builder);
 
-    if (isNotNullOrEmpty(labelString)) {
-      builder.append(labelString);
+    if (isNotNullOrEmpty(this.label)) {
+      appendLabel(builder, this.label);
     }
 
-    if (isNotNullOrEmpty(propertiesString)) {
-      builder.append(propertiesString);
+    if (propertyValues != null && !propertyValues.isEmpty()) {
+      appendProperties(builder, this.propertyValues, bindings);
     }
 
-    if (isNotNullOrEmpty(inE)) {
-      builder.append(inE);
+    if (inEdgesSpecs != null && !inEdgesSpecs.isEmpty()) {
+      appendEdgeQuery(builder, this.inEdgesSpecs, bindings);
     }
 
-    if (isNotNullOrEmpty(outE)) {
-      builder.append(outE);
+    if (outEdgesSpecs != null && !outEdgesSpecs.isEmpty()) {
+      appendEdgeQuery(builder, this.outEdgesSpecs, bindings);
     }
 
-    return builder.toString();
+    if (path != null) {
+      path.appendTo(builder, bindings);
+    }
+
+    appendPaging(builder, this.orderProperty, this.rangeLow, this.rangeHigh, bindings);
+
+    if (projection != null) {
+      projection.appendTo(builder);
+    }
+  }
+
+  @Override
+  public void appendTo(Traversal traversal) {
+    Preconditions.checkArgument(!isInV || !isOutV, "A vertex cannot be in and out vertex at the same time.");
+    traversal.addStep(isInV ? "inV" : (isOutV ? "outV" : "V"));
+
+    if (isNotNullOrEmpty(this.label)) {
+      traversal.addStep("hasLabel", this.label);
+    }
+
+    SpecStorage.orEmpty(this.propertyValues).forEach((k, v) -> traversal.addStep("has", k, v));
+    SpecStorage.orEmpty(this.inEdgesSpecs).forEach(s -> s.appendTo(traversal));
+    SpecStorage.orEmpty(this.outEdgesSpecs).forEach(s -> s.appendTo(traversal));
+    if (path != null) {
+      path.appendTo(traversal);
+    }
+    appendPaging(traversal, this.orderProperty, this.rangeLow, this.rangeHigh);
+
+    if (projection != null) {
+      projection.appendTo(traversal);
+    }
   }
 
   @Override
@@ -124,7 +325,13 @@ public class VertexSpec implements VertexOrEdgeSpec, StringUtils {
       VertexSpec that = (VertexSpec) obj;
 
       return Objects.equal(this.label, that.label) && Objects.equal(this.isInV, that.isInV)
-          && Objects.equal(this.isOutV, that.isOutV) && Objects.equal(this.propertyValues, that.propertyValues);
+          && Objects.equal(this.isOutV, that.isOutV)
+          && Objects.equal(SpecStorage.orEmpty(this.inEdgesSpecs), SpecStorage.orEmpty(that.inEdgesSpecs))
+          && Objects.equal(SpecStorage.orEmpty(this.outEdgesSpecs), SpecStorage.orEmpty(that.outEdgesSpecs))
+          && Objects.equal(SpecStorage.orEmpty(this.propertyValues), SpecStorage.orEmpty(that.propertyValues))
+          && Objects.equal(this.path, that.path) && Objects.equal(this.orderProperty, that.orderProperty)
+          && this.rangeLow == that.rangeLow && this.rangeHigh == that.rangeHigh
+          && Objects.equal(this.projection, that.projection);
     }
 
     return false;
@@ -132,40 +339,88 @@ public class VertexSpec implements VertexOrEdgeSpec, StringUtils {
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(this.label, this.isInV, this.isOutV, this.propertyValues);
+    if (frozen) {
+      return frozenHashCode;
+    }
+
+    return computeHashCode();
   }
 
-  private String getVertexString() {
-    Preconditions.checkArgument(!isInV || !isOutV, "A vertex cannot be in and out vertex at the same time.");
+  private int computeHashCode() {
+    return Objects.hashCode(this.label, this.isInV, this.isOutV, SpecStorage.orEmpty(this.inEdgesSpecs),
+        SpecStorage.orEmpty(this.outEdgesSpecs), SpecStorage.orEmpty(this.propertyValues), this.path,
+        this.orderProperty, this.rangeLow, this.rangeHigh, this.projection);
+  }
 
-    if (isInV) {
-      return ".inV()";
-    } else if (isOutV) {
-      return ".outV()";
-    } else {
-      return "g.V()";
+  private VertexSpec mutable() {
+    return frozen ? new VertexSpec(this) : this;
+  }
+
+  private VertexSpec result(VertexSpec spec) {
+    return frozen ? spec.seal() : spec.changed();
+  }
+
+  private VertexSpec changed() {
+    if (fragmentCache != null) {
+      fragmentCache.invalidate();
     }
+    return this;
   }
 
-  private String getLabelString() {
-    return String.format(getLabelFormat(), this.label);
+  private FragmentCache fragmentCache() {
+    if (fragmentCache == null) {
+      fragmentCache = new FragmentCache();
+    }
+    return fragmentCache;
   }
 
-  private String getPropertiesString() {
-    StringBuilder builder = new StringBuilder("");
-    this.propertyValues.forEach((k, v) -> builder.append(String.format(getPropertyFormat(), k, v)));
-    String vertexPropStr = builder.toString();
+  /**
+   * Tells whether the traversal moves on from the vertices of this spec, so
+   * that it returns the elements of nested specs.
+   */
+  boolean hasNestedElements() {
+    return (inEdgesSpecs != null && !inEdgesSpecs.isEmpty()) || (outEdgesSpecs != null && !outEdgesSpecs.isEmpty())
+        || path != null;
+  }
 
-    logger.info(String.format("Vertex properties string: %s", vertexPropStr));
-    return vertexPropStr;
+  /**
+   * Links this spec to the spec it was nested in, so that changing it clears
+   * the parent's cached fragment. Frozen specs never change.
+   */
+  void addParent(FragmentCache parent) {
+    if (!frozen) {
+      fragmentCache().addParent(parent);
+    }
   }
 
-  private String getEdgeQuery(List<EdgeSpec> edgesSpecs) {
-    StringBuilder builder = new StringBuilder("");
-    edgesSpecs.forEach(s -> builder.append(s.getQuery()));
-    String edgeQuery = builder.toString();
+  private VertexSpec seal() {
+    SpecStorage.seal(this.propertyValues);
+    this.frozenHashCode = computeHashCode();
+
+    // rendered here, so that a frozen spec is never written to after it is published
+    StringBuilder builder = new StringBuilder(64);
+    render(builder, null);
+    this.fragmentCache = new FragmentCache();
+    this.fragmentCache.set(builder.toString());
+    this.frozen = true;
+    return this;
+  }
 
-    logger.info(String.format("Edge query string: %s", edgeQuery));
-    return edgeQuery;
+  private void appendVertexString(StringBuilder builder) {
+    Preconditions.checkArgument(!isInV || !isOutV, "A vertex cannot be in and out vertex at the same time.");
+
+    if (isInV) {
+      builder.append(".inV()");
+    } else if (isOutV) {
+      builder.append(".outV()");
+    } else {
+      builder.append("g.V()");
+    }
+  }
+
+  private void appendEdgeQuery(StringBuilder builder, List<EdgeSpec> edgesSpecs, Map<String, Object> bindings) {
+    for (EdgeSpec edgeSpec : edgesSpecs) {
+      edgeSpec.appendTo(builder, bindings);
+    }
   }
 }
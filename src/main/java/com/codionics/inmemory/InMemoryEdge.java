@@ -0,0 +1,27 @@
+package com.codionics.inmemory;
+
+import java.util.Map;
+
+public class InMemoryEdge extends InMemoryElement {
+  private final InMemoryVertex outVertex;
+  private final InMemoryVertex inVertex;
+
+  InMemoryEdge(long id, String label, InMemoryVertex outVertex, InMemoryVertex inVertex, Map<String, ?> properties) {
+    super(id, label, properties);
+    this.outVertex = outVertex;
+    this.inVertex = inVertex;
+  }
+
+  public InMemoryVertex getOutVertex() {
+    return outVertex;
+  }
+
+  public InMemoryVertex getInVertex() {
+    return inVertex;
+  }
+
+  @Override
+  public String toString() {
+    return "e[" + getId() + "][" + outVertex.getId() + "-" + getLabel() + "->" + inVertex.getId() + "]";
+  }
+}
@@ -0,0 +1,51 @@
+package com.codionics.inmemory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A vertex or an edge of an {@link InMemoryGraph}: an id, a label and its
+ * properties.
+ */
+public abstract class InMemoryElement {
+  private final long id;
+  private final String label;
+  private final Map<String, Object> properties;
+
+  InMemoryElement(long id, String label, Map<String, ?> properties) {
+    this.id = id;
+    this.label = label;
+    this.properties = new LinkedHashMap<>(properties);
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getLabel() {
+    return label;
+  }
+
+  public Object getProperty(String key) {
+    return properties.get(key);
+  }
+
+  public Map<String, Object> getProperties() {
+    return Collections.unmodifiableMap(properties);
+  }
+
+  void setProperty(String key, Object value) {
+    properties.put(key, value);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj != null && obj.getClass() == getClass() && ((InMemoryElement) obj).id == id;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(id);
+  }
+}
@@ -0,0 +1,167 @@
+package com.codionics.inmemory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.codionics.GremlinQueryBuilder;
+import com.codionics.Traversal;
+import com.codionics.VertexOrEdgeSpec;
+import com.google.common.base.Preconditions;
+
+/**
+ * An in-process graph that executes the traversals of vertex/ edge specs
+ * directly, without a gremlin server. Equality and within() filters on indexed
+ * properties at the start of a traversal are answered from hash indexes.
+ *
+ * <p>
+ * Reads run concurrently and writes are exclusive, so the graph can be used
+ * both as a test double and as a local read-through cache of hot, read-mostly
+ * data.
+ */
+public class InMemoryGraph {
+  private final Map<Long, InMemoryVertex> vertices = new LinkedHashMap<>();
+  private final Map<Long, InMemoryEdge> edges = new LinkedHashMap<>();
+  private final PropertyIndex<InMemoryVertex> vertexIndex;
+  private final PropertyIndex<InMemoryEdge> edgeIndex;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private long nextId = 1;
+
+  public InMemoryGraph(String... indexedProperties) {
+    Set<String> indexed = new LinkedHashSet<>(Arrays.asList(indexedProperties));
+    this.vertexIndex = new PropertyIndex<>(indexed);
+    this.edgeIndex = new PropertyIndex<>(indexed);
+  }
+
+  /**
+   * Creates a graph indexing the sid, sKey and container properties.
+   */
+  public static InMemoryGraph withDefaultIndexes() {
+    return new InMemoryGraph("sid", "sKey", "container");
+  }
+
+  public InMemoryVertex addVertex(String label, Map<String, ?> properties) {
+    lock.writeLock().lock();
+    try {
+      InMemoryVertex vertex = new InMemoryVertex(nextId++, label, properties);
+      vertices.put(vertex.getId(), vertex);
+      vertexIndex.add(vertex);
+      return vertex;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public InMemoryEdge addEdge(String label, InMemoryVertex outVertex, InMemoryVertex inVertex,
+      Map<String, ?> properties) {
+    lock.writeLock().lock();
+    try {
+      Preconditions.checkArgument(vertices.get(outVertex.getId()) == outVertex, "Unknown out vertex: %s", outVertex);
+      Preconditions.checkArgument(vertices.get(inVertex.getId()) == inVertex, "Unknown in vertex: %s", inVertex);
+
+      InMemoryEdge edge = new InMemoryEdge(nextId++, label, outVertex, inVertex, properties);
+      edges.put(edge.getId(), edge);
+      edgeIndex.add(edge);
+      outVertex.addOutEdge(edge);
+      inVertex.addInEdge(edge);
+      return edge;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void setProperty(InMemoryElement element, String key, Object value) {
+    lock.writeLock().lock();
+    try {
+      Object oldValue = element.getProperty(key);
+      element.setProperty(key, value);
+      if (element instanceof InMemoryVertex) {
+        vertexIndex.remove((InMemoryVertex) element, key, oldValue);
+        vertexIndex.add((InMemoryVertex) element, key, value);
+      } else {
+        edgeIndex.remove((InMemoryEdge) element, key, oldValue);
+        edgeIndex.add((InMemoryEdge) element, key, value);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public List<Object> execute(VertexOrEdgeSpec spec) {
+    return execute(spec.getTraversal());
+  }
+
+  public List<Object> execute(GremlinQueryBuilder builder) {
+    return execute(builder.getTraversal());
+  }
+
+  public List<Object> execute(Traversal traversal) {
+    lock.readLock().lock();
+    try {
+      return new TraversalInterpreter(this).execute(traversal);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int getVertexCount() {
+    lock.readLock().lock();
+    try {
+      return vertices.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  public int getEdgeCount() {
+    lock.readLock().lock();
+    try {
+      return edges.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  Collection<InMemoryVertex> getVertices() {
+    return vertices.values();
+  }
+
+  Collection<InMemoryEdge> getEdges() {
+    return edges.values();
+  }
+
+  boolean isIndexed(String property) {
+    return vertexIndex.isIndexed(property);
+  }
+
+  Collection<InMemoryVertex> lookupVertices(String property, Collection<?> values) {
+    return lookup(vertexIndex, property, values);
+  }
+
+  Collection<InMemoryEdge> lookupEdges(String property, Collection<?> values) {
+    return lookup(edgeIndex, property, values);
+  }
+
+  private static <E extends InMemoryElement> Collection<E> lookup(PropertyIndex<E> index, String property,
+      Collection<?> values) {
+    Set<E> elements = new LinkedHashSet<>();
+    values.forEach(v -> elements.addAll(index.lookup(property, v)));
+    if (elements.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    // keep the order of a full scan, which is the order of the ids
+    List<E> sorted = new ArrayList<>(elements);
+    sorted.sort(Comparator.comparingLong(InMemoryElement::getId));
+    return sorted;
+  }
+}
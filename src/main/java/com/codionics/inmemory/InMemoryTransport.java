@@ -0,0 +1,55 @@
+package com.codionics.inmemory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.codionics.QueryRequest;
+import com.codionics.QueryTransport;
+import com.google.common.base.Preconditions;
+
+/**
+ * A transport that evaluates requests on an {@link InMemoryGraph} in process,
+ * optionally after a simulated network latency, so that code built on a
+ * {@link com.codionics.QueryExecutor} can be tested and measured without a
+ * gremlin server.
+ */
+public class InMemoryTransport implements QueryTransport {
+  private final InMemoryGraph graph;
+  private final ScheduledExecutorService executor;
+  private long latencyNanos;
+
+  public InMemoryTransport(InMemoryGraph graph, ScheduledExecutorService executor) {
+    this.graph = Preconditions.checkNotNull(graph, "The graph must not be null.");
+    this.executor = Preconditions.checkNotNull(executor, "The executor must not be null.");
+  }
+
+  /**
+   * Delays every response by the given time, without holding a thread.
+   */
+  public InMemoryTransport withLatency(long latency, TimeUnit unit) {
+    Preconditions.checkArgument(latency >= 0, "The latency must not be negative.");
+    this.latencyNanos = unit.toNanos(latency);
+    return this;
+  }
+
+  @Override
+  public CompletableFuture<List<Object>> submit(QueryRequest request) {
+    CompletableFuture<List<Object>> response = new CompletableFuture<>();
+    Runnable evaluation = () -> {
+      try {
+        response.complete(graph.execute(request.getTraversal()));
+      } catch (RuntimeException e) {
+        response.completeExceptionally(e);
+      }
+    };
+
+    if (latencyNanos > 0) {
+      executor.schedule(evaluation, latencyNanos, TimeUnit.NANOSECONDS);
+    } else {
+      executor.execute(evaluation);
+    }
+    return response;
+  }
+}
@@ -0,0 +1,36 @@
+package com.codionics.inmemory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class InMemoryVertex extends InMemoryElement {
+  private final List<InMemoryEdge> inEdges = new ArrayList<>();
+  private final List<InMemoryEdge> outEdges = new ArrayList<>();
+
+  InMemoryVertex(long id, String label, Map<String, ?> properties) {
+    super(id, label, properties);
+  }
+
+  public List<InMemoryEdge> getInEdges() {
+    return Collections.unmodifiableList(inEdges);
+  }
+
+  public List<InMemoryEdge> getOutEdges() {
+    return Collections.unmodifiableList(outEdges);
+  }
+
+  void addInEdge(InMemoryEdge edge) {
+    inEdges.add(edge);
+  }
+
+  void addOutEdge(InMemoryEdge edge) {
+    outEdges.add(edge);
+  }
+
+  @Override
+  public String toString() {
+    return "v[" + getId() + "]";
+  }
+}
@@ -0,0 +1,58 @@
+package com.codionics.inmemory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hash indexes from property value to elements, one per indexed property.
+ * Numbers are keyed by their double value, so that 1 finds 1L the way
+ * {@link com.codionics.PropertyPredicate} compares them.
+ */
+class PropertyIndex<E extends InMemoryElement> {
+  private final Map<String, Map<Object, Set<E>>> indexes = new HashMap<>();
+
+  PropertyIndex(Set<String> indexedProperties) {
+    indexedProperties.forEach(p -> indexes.put(p, new HashMap<>()));
+  }
+
+  boolean isIndexed(String property) {
+    return indexes.containsKey(property);
+  }
+
+  void add(E element) {
+    element.getProperties().forEach((k, v) -> add(element, k, v));
+  }
+
+  void add(E element, String property, Object value) {
+    Map<Object, Set<E>> index = indexes.get(property);
+    if (index != null && value != null) {
+      index.computeIfAbsent(normalize(value), v -> new LinkedHashSet<>()).add(element);
+    }
+  }
+
+  void remove(E element, String property, Object value) {
+    Map<Object, Set<E>> index = indexes.get(property);
+    if (index != null && value != null) {
+      Object key = normalize(value);
+      Set<E> elements = index.get(key);
+      if (elements != null) {
+        elements.remove(element);
+        if (elements.isEmpty()) {
+          index.remove(key);
+        }
+      }
+    }
+  }
+
+  Set<E> lookup(String property, Object value) {
+    Set<E> elements = indexes.get(property).get(normalize(value));
+    return elements == null ? Collections.emptySet() : elements;
+  }
+
+  private static Object normalize(Object value) {
+    return value instanceof Number ? Double.valueOf(((Number) value).doubleValue()) : value;
+  }
+}
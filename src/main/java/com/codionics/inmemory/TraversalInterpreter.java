@@ -0,0 +1,401 @@
+package com.codionics.inmemory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.codionics.PropertyPredicate;
+import com.codionics.Traversal;
+import com.codionics.TraversalStep;
+import com.google.common.base.Preconditions;
+
+/**
+ * Evaluates the steps of a {@link Traversal} against an {@link InMemoryGraph},
+ * one step at a time over the list of current traversers.
+ */
+class TraversalInterpreter {
+  private static final int MAX_LOOPS = 10_000;
+  private static final Set<String> BY_MODULATOR = Collections.singleton("by");
+  private static final Set<String> REPEAT_MODULATORS = new HashSet<>(Arrays.asList("times", "until", "emit"));
+
+  private final InMemoryGraph graph;
+  private final Map<String, List<Object>> sideEffects = new HashMap<>();
+
+  TraversalInterpreter(InMemoryGraph graph) {
+    this.graph = graph;
+  }
+
+  List<Object> execute(Traversal traversal) {
+    List<Traverser> traversers = run(traversal, Collections.singletonList(Traverser.root()));
+    List<Object> results = new ArrayList<>(traversers.size());
+    traversers.forEach(t -> results.add(t.value));
+    return results;
+  }
+
+  private List<Traverser> run(Traversal traversal, List<Traverser> traversers) {
+    List<TraversalStep> steps = traversal.getSteps();
+    int i = 0;
+    while (i < steps.size()) {
+      TraversalStep step = steps.get(i);
+      int modulators = countModulators(step, steps, i + 1);
+      List<TraversalStep> bys = steps.subList(i + 1, i + 1 + modulators);
+      traversers = apply(step, bys, steps.subList(i + 1 + modulators, steps.size()), traversers);
+      i += 1 + modulators;
+    }
+    return traversers;
+  }
+
+  private List<Traverser> apply(TraversalStep step, List<TraversalStep> bys, List<TraversalStep> following,
+      List<Traverser> traversers) {
+    List<Object> arguments = step.getArguments();
+
+    switch (step.getName()) {
+    case "V":
+      return flatMap(traversers, t -> startElements(graph.getVertices(), following, true));
+    case "E":
+      return flatMap(traversers, t -> startElements(graph.getEdges(), following, false));
+    case "inject":
+      List<Traverser> injected = new ArrayList<>(traversers);
+      arguments.forEach(a -> injected.add(Traverser.root().moveTo(a)));
+      return injected;
+    case "hasLabel":
+      return filter(traversers, t -> t.value instanceof InMemoryElement
+          && arguments.contains(((InMemoryElement) t.value).getLabel()));
+    case "has":
+      return filter(traversers, t -> hasProperty(t.value, arguments));
+    case "outE":
+      return flatMap(traversers, t -> withLabels(((InMemoryVertex) t.value).getOutEdges(), arguments));
+    case "inE":
+      return flatMap(traversers, t -> withLabels(((InMemoryVertex) t.value).getInEdges(), arguments));
+    case "outV":
+      return map(traversers, t -> ((InMemoryEdge) t.value).getOutVertex());
+    case "inV":
+      return map(traversers, t -> ((InMemoryEdge) t.value).getInVertex());
+    case "out":
+      return flatMap(traversers, t -> adjacent(((InMemoryVertex) t.value).getOutEdges(), arguments, true));
+    case "in":
+      return flatMap(traversers, t -> adjacent(((InMemoryVertex) t.value).getInEdges(), arguments, false));
+    case "where":
+      if (arguments.get(0) instanceof PropertyPredicate) {
+        PropertyPredicate predicate = (PropertyPredicate) arguments.get(0);
+        Preconditions.checkArgument(predicate.isSideEffect(), "Unsupported where() predicate: %s", predicate);
+        List<Object> collected = sideEffects.getOrDefault((String) predicate.getValues().get(0),
+            Collections.emptyList());
+        return filter(traversers, t -> collected.contains(t.value));
+      }
+      Traversal where = (Traversal) arguments.get(0);
+      return filter(traversers, t -> !run(where, Collections.singletonList(t)).isEmpty());
+    case "sideEffect":
+      traversers.forEach(t -> run((Traversal) arguments.get(0), Collections.singletonList(t)));
+      return traversers;
+    case "aggregate":
+      List<Object> aggregated = sideEffects.computeIfAbsent((String) arguments.get(0), k -> new ArrayList<>());
+      traversers.forEach(t -> aggregated.add(t.value));
+      return traversers;
+    case "union":
+      List<Traverser> united = new ArrayList<>();
+      for (Traverser traverser : traversers) {
+        arguments.forEach(branch -> united.addAll(run((Traversal) branch, Collections.singletonList(traverser))));
+      }
+      return united;
+    case "order":
+      List<Traverser> ordered = new ArrayList<>(traversers);
+      String orderKey = bys.isEmpty() ? null : (String) bys.get(0).getArgument(0);
+      ordered.sort(Comparator.comparing(t -> orderValue(t.value, orderKey), TraversalInterpreter::compareValues));
+      return ordered;
+    case "range":
+      return range(traversers, toLong(arguments.get(0)), toLong(arguments.get(1)));
+    case "limit":
+      return range(traversers, 0, toLong(arguments.get(0)));
+    case "repeat":
+      return repeat((Traversal) arguments.get(0), bys, traversers);
+    case "loops":
+      return map(traversers, t -> t.loops);
+    case "is":
+      Object expected = arguments.get(0);
+      return filter(traversers, t -> expected instanceof PropertyPredicate ? ((PropertyPredicate) expected).test(
+          t.value) : expected.equals(t.value));
+    case "or":
+      return filter(traversers, t -> arguments.stream().anyMatch(branch -> !run((Traversal) branch,
+          Collections.singletonList(t)).isEmpty()));
+    case "and":
+      return filter(traversers, t -> arguments.stream().allMatch(branch -> !run((Traversal) branch,
+          Collections.singletonList(t)).isEmpty()));
+    case "simplePath":
+      return filter(traversers, TraversalInterpreter::isSimplePath);
+    case "dedup":
+      Set<Object> seen = new LinkedHashSet<>();
+      return filter(traversers, t -> seen.add(t.value));
+    case "fold":
+      List<Object> folded = new ArrayList<>(traversers.size());
+      traversers.forEach(t -> folded.add(t.value));
+      return Collections.singletonList(Traverser.root().moveTo(folded));
+    case "count":
+      return Collections.singletonList(Traverser.root().moveTo((long) traversers.size()));
+    case "id":
+      return map(traversers, t -> ((InMemoryElement) t.value).getId());
+    case "values":
+      return flatMap(traversers, t -> propertyValues((InMemoryElement) t.value, arguments));
+    case "valueMap":
+      return map(traversers, t -> valueMap((InMemoryElement) t.value, arguments));
+    case "project":
+      return map(traversers, t -> project((InMemoryElement) t.value, arguments, bys));
+    default:
+      throw new UnsupportedOperationException("Step not supported by the in-memory graph: " + step.getName());
+    }
+  }
+
+  private static int countModulators(TraversalStep step, List<TraversalStep> steps, int from) {
+    Set<String> modulators = "repeat".equals(step.getName()) ? REPEAT_MODULATORS : BY_MODULATOR;
+    int count = 0;
+    while (from + count < steps.size() && modulators.contains(steps.get(from + count).getName())) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Runs the repeated traversal on the traversers until each of them reaches
+   * the hop count or matches the until() condition, checked after every hop.
+   * Traversers matching the emit() condition on the way are returned too.
+   */
+  private List<Traverser> repeat(Traversal repeated, List<TraversalStep> modulators, List<Traverser> traversers) {
+    List<Traverser> results = new ArrayList<>();
+    List<Traverser> current = new ArrayList<>(traversers.size());
+    traversers.forEach(t -> current.add(t.withLoops(0)));
+
+    while (!current.isEmpty()) {
+      List<Traverser> next = new ArrayList<>();
+      for (Traverser traverser : run(repeated, current)) {
+        Traverser looped = traverser.nextLoop();
+        Preconditions.checkState(looped.loops <= MAX_LOOPS, "The repeat() step did not end after %s loops.",
+            MAX_LOOPS);
+
+        if (matches(looped, modulators, "times", "until")) {
+          results.add(looped);
+        } else {
+          if (matches(looped, modulators, "emit")) {
+            results.add(looped);
+          }
+          next.add(looped);
+        }
+      }
+      current.clear();
+      current.addAll(next);
+    }
+    return results;
+  }
+
+  private boolean matches(Traverser traverser, List<TraversalStep> modulators, String... names) {
+    for (TraversalStep modulator : modulators) {
+      if (!Arrays.asList(names).contains(modulator.getName())) {
+        continue;
+      }
+
+      if (modulator.getArguments().isEmpty()) {
+        return true;
+      }
+
+      Object argument = modulator.getArgument(0);
+      if (argument instanceof Number ? traverser.loops >= ((Number) argument).intValue()
+          : !run((Traversal) argument, Collections.singletonList(traverser)).isEmpty()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isSimplePath(Traverser traverser) {
+    return new HashSet<>(traverser.path).size() == traverser.path.size();
+  }
+
+  /**
+   * Returns the elements for a V() or E() step, answering the first equality or
+   * within() filter on an indexed property among the following filters from
+   * the index. The filters themselves are still applied by their own steps.
+   */
+  private List<Object> startElements(Collection<? extends InMemoryElement> all, List<TraversalStep> following,
+      boolean vertices) {
+    for (TraversalStep step : following) {
+      if ("has".equals(step.getName()) && step.getArguments().size() == 2) {
+        String property = (String) step.getArgument(0);
+        Object value = step.getArgument(1);
+        if (graph.isIndexed(property) && isIndexable(value)) {
+          Collection<?> values = value instanceof PropertyPredicate ? ((PropertyPredicate) value).getValues()
+              : Collections.singletonList(value);
+          return new ArrayList<>(vertices ? graph.lookupVertices(property, values) : graph.lookupEdges(property,
+              values));
+        }
+      } else if (!"hasLabel".equals(step.getName())) {
+        break;
+      }
+    }
+    return new ArrayList<>(all);
+  }
+
+  private static boolean isIndexable(Object value) {
+    return !(value instanceof PropertyPredicate) || "within".equals(((PropertyPredicate) value).getName());
+  }
+
+  private static boolean hasProperty(Object value, List<Object> arguments) {
+    if (!(value instanceof InMemoryElement)) {
+      return false;
+    }
+
+    Object property = ((InMemoryElement) value).getProperty((String) arguments.get(0));
+    if (arguments.size() == 1) {
+      return property != null;
+    }
+
+    Object expected = arguments.get(1);
+    if (expected instanceof PropertyPredicate) {
+      return ((PropertyPredicate) expected).test(property);
+    }
+    // compares numbers of different types like within() and the index do
+    return PropertyPredicate.within(Collections.singletonList(expected)).test(property);
+  }
+
+  private static List<Object> withLabels(List<InMemoryEdge> edges, List<Object> labels) {
+    List<Object> matching = new ArrayList<>(edges.size());
+    edges.stream().filter(e -> labels.isEmpty() || labels.contains(e.getLabel())).forEach(matching::add);
+    return matching;
+  }
+
+  private static List<Object> adjacent(List<InMemoryEdge> edges, List<Object> labels, boolean out) {
+    List<Object> vertices = new ArrayList<>(edges.size());
+    for (Object edge : withLabels(edges, labels)) {
+      vertices.add(out ? ((InMemoryEdge) edge).getInVertex() : ((InMemoryEdge) edge).getOutVertex());
+    }
+    return vertices;
+  }
+
+  private static Object orderValue(Object value, String key) {
+    return key != null && value instanceof InMemoryElement ? ((InMemoryElement) value).getProperty(key) : value;
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static int compareValues(Object value, Object other) {
+    if (value == null || other == null) {
+      return value == null ? (other == null ? 0 : 1) : -1;
+    }
+
+    if (value instanceof Number && other instanceof Number) {
+      return Double.compare(((Number) value).doubleValue(), ((Number) other).doubleValue());
+    }
+
+    if (value instanceof Comparable && value.getClass() == other.getClass()) {
+      return ((Comparable) value).compareTo(other);
+    }
+
+    return value.toString().compareTo(other.toString());
+  }
+
+  private static List<Object> propertyValues(InMemoryElement element, List<Object> keys) {
+    List<Object> values = new ArrayList<>();
+    if (keys.isEmpty()) {
+      values.addAll(element.getProperties().values());
+    } else {
+      for (Object key : keys) {
+        Object value = element.getProperty((String) key);
+        if (value != null) {
+          values.add(value);
+        }
+      }
+    }
+    return values;
+  }
+
+  private static Map<String, Object> valueMap(InMemoryElement element, List<Object> keys) {
+    Map<String, Object> valueMap = new LinkedHashMap<>();
+    element.getProperties().forEach((k, v) -> {
+      if (keys.isEmpty() || keys.contains(k)) {
+        valueMap.put(k, Collections.singletonList(v));
+      }
+    });
+    return valueMap;
+  }
+
+  private static Map<String, Object> project(InMemoryElement element, List<Object> keys, List<TraversalStep> bys) {
+    Map<String, Object> projection = new LinkedHashMap<>();
+    for (int i = 0; i < keys.size(); i++) {
+      String property = i < bys.size() ? (String) bys.get(i).getArgument(0) : (String) keys.get(i);
+      projection.put((String) keys.get(i), element.getProperty(property));
+    }
+    return projection;
+  }
+
+  private static long toLong(Object value) {
+    return ((Number) value).longValue();
+  }
+
+  private static List<Traverser> range(List<Traverser> traversers, long low, long high) {
+    int from = (int) Math.min(low, traversers.size());
+    int to = (int) Math.min(high, traversers.size());
+    return new ArrayList<>(traversers.subList(from, Math.max(from, to)));
+  }
+
+  private static List<Traverser> filter(List<Traverser> traversers, java.util.function.Predicate<Traverser> test) {
+    List<Traverser> kept = new ArrayList<>(traversers.size());
+    traversers.stream().filter(test).forEach(kept::add);
+    return kept;
+  }
+
+  private static List<Traverser> map(List<Traverser> traversers, Function<Traverser, Object> mapper) {
+    List<Traverser> mapped = new ArrayList<>(traversers.size());
+    traversers.forEach(t -> mapped.add(t.moveTo(mapper.apply(t))));
+    return mapped;
+  }
+
+  private static List<Traverser> flatMap(List<Traverser> traversers,
+      Function<Traverser, ? extends Collection<?>> mapper) {
+    List<Traverser> mapped = new ArrayList<>();
+    for (Traverser traverser : traversers) {
+      mapper.apply(traverser).forEach(v -> mapped.add(traverser.moveTo(v)));
+    }
+    return mapped;
+  }
+
+  /**
+   * The current value of one traversal path, with the values it went through.
+   */
+  static final class Traverser {
+    final Object value;
+    final List<Object> path;
+    final int loops;
+
+    private Traverser(Object value, List<Object> path, int loops) {
+      this.value = value;
+      this.path = path;
+      this.loops = loops;
+    }
+
+    static Traverser root() {
+      return new Traverser(null, Collections.emptyList(), 0);
+    }
+
+    Traverser moveTo(Object newValue) {
+      List<Object> newPath = new ArrayList<>(path.size() + 1);
+      newPath.addAll(path);
+      newPath.add(newValue);
+      return new Traverser(newValue, newPath, loops);
+    }
+
+    Traverser nextLoop() {
+      return withLoops(loops + 1);
+    }
+
+    Traverser withLoops(int newLoops) {
+      return new Traverser(value, path, newLoops);
+    }
+  }
+}
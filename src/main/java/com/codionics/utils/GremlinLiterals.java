@@ -0,0 +1,101 @@
+package com.codionics.utils;
+
+import java.util.Collection;
+
+/**
+ * Writes values as gremlin literals: numbers and booleans as is, any other
+ * value as a quoted string and a collection as a comma separated list of
+ * literals.
+ *
+ * <p>
+ * Strings are single quoted and escaped with a lookup table in one scan,
+ * straight into the output buffer. A string without characters to escape is
+ * appended as is, without allocating.
+ */
+public final class GremlinLiterals {
+  private static final char UNICODE_ESCAPE = 'u';
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   * For every ASCII char, the char following the backslash of its escape
+   * sequence, or 0 when it is written as is.
+   */
+  private static final char[] ESCAPES = new char[128];
+
+  static {
+    for (int c = 0; c < 0x20; c++) {
+      ESCAPES[c] = UNICODE_ESCAPE;
+    }
+    ESCAPES[0x7F] = UNICODE_ESCAPE;
+    ESCAPES['\b'] = 'b';
+    ESCAPES['\t'] = 't';
+    ESCAPES['\n'] = 'n';
+    ESCAPES['\f'] = 'f';
+    ESCAPES['\r'] = 'r';
+    ESCAPES['\''] = '\'';
+    ESCAPES['\\'] = '\\';
+  }
+
+  private GremlinLiterals() {
+  }
+
+  public static void append(StringBuilder builder, Object value) {
+    if (value instanceof Collection) {
+      boolean first = true;
+      for (Object item : (Collection<?>) value) {
+        if (!first) {
+          builder.append(", ");
+        }
+        appendQuoted(builder, item);
+        first = false;
+      }
+    } else {
+      appendQuoted(builder, value);
+    }
+  }
+
+  public static void appendQuoted(StringBuilder builder, Object value) {
+    if (value instanceof Number || value instanceof Boolean) {
+      builder.append(value);
+    } else if (value instanceof CharSequence) {
+      appendString(builder, (CharSequence) value);
+    } else {
+      appendString(builder, String.valueOf(value));
+    }
+  }
+
+  /**
+   * Appends the value as a single quoted string literal, escaping quotes,
+   * backslashes and control characters.
+   */
+  public static void appendString(StringBuilder builder, CharSequence value) {
+    builder.append('\'');
+
+    int length = value.length();
+    int safeStart = 0;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 128 && ESCAPES[c] != 0) {
+        builder.append(value, safeStart, i);
+        appendEscape(builder, c);
+        safeStart = i + 1;
+      }
+    }
+
+    if (safeStart == 0) {
+      builder.append(value);
+    } else {
+      builder.append(value, safeStart, length);
+    }
+    builder.append('\'');
+  }
+
+  private static void appendEscape(StringBuilder builder, char c) {
+    char escape = ESCAPES[c];
+    builder.append('\\').append(escape);
+    if (escape == UNICODE_ESCAPE) {
+      builder.append(HEX_DIGITS[(c >> 12) & 0xF]).append(HEX_DIGITS[(c >> 8) & 0xF])
+          .append(HEX_DIGITS[(c >> 4) & 0xF]).append(HEX_DIGITS[c & 0xF]);
+    }
+  }
+}
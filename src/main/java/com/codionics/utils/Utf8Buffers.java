@@ -0,0 +1,153 @@
+package com.codionics.utils;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes rendered queries as UTF-8 straight into byte buffers, so a query can
+ * go from its render buffer to a request frame without an intermediate String
+ * or byte array. Unpaired surrogates are written as '?', as
+ * String.getBytes(UTF_8) does.
+ */
+public final class Utf8Buffers {
+  private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+  private static final ThreadLocal<StringBuilder> SCRATCH = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+  private Utf8Buffers() {
+  }
+
+  /**
+   * Returns an empty render buffer owned by the calling thread. It must not be
+   * used again until the caller has written its contents.
+   */
+  public static StringBuilder scratch() {
+    StringBuilder builder = SCRATCH.get();
+    if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+      builder = new StringBuilder(256);
+      SCRATCH.set(builder);
+    }
+
+    builder.setLength(0);
+    return builder;
+  }
+
+  public static int encodedLength(CharSequence chars) {
+    int length = chars.length();
+    int bytes = length;
+
+    for (int i = 0; i < length; i++) {
+      char c = chars.charAt(i);
+      if (c >= 0x80) {
+        if (c < 0x800) {
+          bytes += 1;
+        } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+          bytes += 2;
+          i++;
+        } else if (Character.isSurrogate(c)) {
+          // written as '?'
+        } else {
+          bytes += 2;
+        }
+      }
+    }
+
+    return bytes;
+  }
+
+  /**
+   * Writes the chars at the position of the target and returns the number of
+   * bytes written. Nothing is written when they do not fit.
+   *
+   * @throws BufferOverflowException when the target has too little room left
+   */
+  public static int write(CharSequence chars, ByteBuffer target) {
+    int bytes = encodedLength(chars);
+    if (bytes > target.remaining()) {
+      throw new BufferOverflowException();
+    }
+
+    if (target.hasArray()) {
+      int offset = target.arrayOffset() + target.position();
+      encode(chars, target.array(), offset);
+      target.position(target.position() + bytes);
+    } else {
+      encode(chars, target);
+    }
+
+    return bytes;
+  }
+
+  /**
+   * Writes the chars at the position of the target, moving its contents to a
+   * larger buffer of the same kind (heap or direct) first when they do not
+   * fit. Returns the buffer that was written to.
+   */
+  public static ByteBuffer writeGrowing(CharSequence chars, ByteBuffer target) {
+    int bytes = encodedLength(chars);
+    ByteBuffer buffer = target;
+
+    if (bytes > target.remaining()) {
+      int capacity = Math.max(target.capacity() * 2, target.position() + bytes);
+      buffer = target.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+      buffer.order(target.order());
+      target.flip();
+      buffer.put(target);
+    }
+
+    write(chars, buffer);
+    return buffer;
+  }
+
+  private static void encode(CharSequence chars, byte[] array, int offset) {
+    int length = chars.length();
+    int pos = offset;
+
+    for (int i = 0; i < length; i++) {
+      char c = chars.charAt(i);
+      if (c < 0x80) {
+        array[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        array[pos++] = (byte) (0xC0 | (c >> 6));
+        array[pos++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+        array[pos++] = (byte) (0xF0 | (codePoint >> 18));
+        array[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        array[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        array[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        array[pos++] = '?';
+      } else {
+        array[pos++] = (byte) (0xE0 | (c >> 12));
+        array[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        array[pos++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  private static void encode(CharSequence chars, ByteBuffer target) {
+    int length = chars.length();
+
+    for (int i = 0; i < length; i++) {
+      char c = chars.charAt(i);
+      if (c < 0x80) {
+        target.put((byte) c);
+      } else if (c < 0x800) {
+        target.put((byte) (0xC0 | (c >> 6)));
+        target.put((byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+        target.put((byte) (0xF0 | (codePoint >> 18)));
+        target.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+        target.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+        target.put((byte) (0x80 | (codePoint & 0x3F)));
+      } else if (Character.isSurrogate(c)) {
+        target.put((byte) '?');
+      } else {
+        target.put((byte) (0xE0 | (c >> 12)));
+        target.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+        target.put((byte) (0x80 | (c & 0x3F)));
+      }
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.codionics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class BulkRendererTests {
+
+  private final String VERTEX_LABEL = "Artifact";
+
+  private List<VertexSpec> specs(int count) {
+    return IntStream.range(0, count).mapToObj(i -> new VertexSpec().hasLabel(VERTEX_LABEL).hasId("ID-" + i))
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void should_render_in_order() {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<VertexSpec> specs = specs(1000);
+      List<String> queries = new BulkRenderer(executor, 7, 3).renderAll(specs);
+      System.out.println("last bulk query: " + queries.get(queries.size() - 1));
+
+      assertThat("query count is wrong", queries.size(), is(specs.size()));
+      for (int i = 0; i < specs.size(); i++) {
+        assertThat("query is out of order", queries.get(i), is(new GremlinQueryBuilder().withVertex(specs.get(i))
+            .getQuery()));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void should_pull_specs_only_as_queries_are_consumed() {
+    List<VertexSpec> specs = specs(100);
+    List<VertexSpec> pulled = new ArrayList<>();
+    Iterable<VertexSpec> source = () -> specs.stream().peek(pulled::add).iterator();
+
+    Iterator<String> queries = new BulkRenderer(Runnable::run, 10, 2).render(source);
+    queries.next();
+
+    assertThat("too many specs were pulled", pulled.size(), is(20));
+  }
+
+  @Test
+  public void should_render_streams() {
+    List<String> queries = new GremlinUtils() {
+    }.getQueries(specs(3).stream()).collect(Collectors.toList());
+
+    assertThat("stream query is wrong", queries.get(2), is("g.V().hasLabel('Artifact').has('sid', 'ID-2')"));
+  }
+}
@@ -0,0 +1,58 @@
+package com.codionics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+public class FragmentCacheTests {
+
+  private final String ID = "ID-1";
+  private final String KEY = "KEY-1";
+  private final String EDGE_LABEL = "Relation";
+  private final String VERTEX_LABEL = "Artifact";
+
+  @Test
+  public void should_reuse_query_until_spec_changes() {
+    VertexSpec vs = new VertexSpec().hasLabel(VERTEX_LABEL);
+    String first = vs.getQuery();
+
+    assertThat("query was rendered again", vs.getQuery(), is(sameInstance(first)));
+    assertThat("changed spec was not rendered again", vs.hasId(ID).getQuery(),
+        is("g.V().hasLabel('Artifact').has('sid', 'ID-1')"));
+  }
+
+  @Test
+  public void should_invalidate_every_parent_of_shared_spec() {
+    VertexSpec shared = new VertexSpec().hasLabel(VERTEX_LABEL);
+    EdgeSpec outgoing = new EdgeSpec().hasLabel(EDGE_LABEL).outV(shared);
+    EdgeSpec filtered = new EdgeSpec().hasKey(KEY).whereOutV(shared);
+    outgoing.getQuery();
+    filtered.getQuery();
+
+    shared.hasId(ID);
+    System.out.println("filtered query after change: " + filtered.getQuery());
+
+    assertThat("first parent is stale", outgoing.getQuery(),
+        is("g.E().hasLabel('Relation').outV().hasLabel('Artifact').has('sid', 'ID-1')"));
+    assertThat("second parent is stale", filtered.getQuery(),
+        is("g.E().has('sKey', 'KEY-1').where(outV().hasLabel('Artifact').has('sid', 'ID-1'))"));
+  }
+
+  @Test
+  public void should_invalidate_ancestors_of_deeply_nested_spec() {
+    VertexSpec leaf = new VertexSpec().hasLabel(VERTEX_LABEL);
+    EdgeSpec middle = new EdgeSpec().hasLabel(EDGE_LABEL).inV(leaf);
+    VertexSpec root = new VertexSpec().hasId(ID).outE(middle);
+    GremlinQueryBuilder gqb = new GremlinQueryBuilder().withVertex(root);
+    gqb.getQuery();
+
+    leaf.hasKey(KEY);
+
+    assertThat("root is stale", gqb.getQuery(),
+        is("g.V().has('sid', 'ID-1').outE().hasLabel('Relation').inV().hasLabel('Artifact').has('sKey', 'KEY-1')"));
+    assertThat("parameterized query differs", gqb.getParameterizedQuery().getQuery(),
+        is("g.V().has('sid', p0).outE().hasLabel('Relation').inV().hasLabel('Artifact').has('sKey', p1)"));
+  }
+}
@@ -0,0 +1,96 @@
+package com.codionics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class FrozenSpecTests {
+
+  private final String ID = "ID-1";
+  private final String KEY = "KEY-1";
+  private final String CONT_KEY = "CKEY-1";
+  private final String EDGE_LABEL = "Relation";
+  private final String VERTEX_LABEL = "Artifact";
+
+  @Test
+  public void should_return_new_spec_when_mutating_frozen_spec() {
+    VertexSpec frozen = new VertexSpec().hasLabel(VERTEX_LABEL).freeze();
+    VertexSpec withId = frozen.hasId(ID);
+
+    assertThat("mutator returned the frozen spec", withId, is(not(sameInstance(frozen))));
+    assertThat("mutator result is not frozen", withId.isFrozen(), is(true));
+    assertThat("frozen spec was changed", frozen.getQuery(), is("g.V().hasLabel('Artifact')"));
+    assertThat("mutator result is wrong", withId.getQuery(), is("g.V().hasLabel('Artifact').has('sid', 'ID-1')"));
+  }
+
+  @Test
+  public void should_not_change_frozen_spec_when_attached_as_nested_spec() {
+    VertexSpec source = new VertexSpec().hasLabel(VERTEX_LABEL).hasId(ID).freeze();
+    EdgeSpec withOutV = new EdgeSpec().hasLabel(EDGE_LABEL).outV(source);
+    EdgeSpec withWhereInV = new EdgeSpec().hasLabel(EDGE_LABEL).whereInV(source);
+
+    assertThat("shared spec was changed", source.getQuery(), is("g.V().hasLabel('Artifact').has('sid', 'ID-1')"));
+    assertThat("out vertex query is wrong", withOutV.getQuery(),
+        is("g.E().hasLabel('Relation').outV().hasLabel('Artifact').has('sid', 'ID-1')"));
+    assertThat("where in vertex query is wrong", withWhereInV.getQuery(),
+        is("g.E().hasLabel('Relation').where(inV().hasLabel('Artifact').has('sid', 'ID-1'))"));
+  }
+
+  @Test
+  public void should_freeze_nested_specs_without_changing_original() {
+    VertexSpec target = new VertexSpec().hasLabel(VERTEX_LABEL);
+    EdgeSpec original = new EdgeSpec().hasKey(KEY).inV(target);
+    EdgeSpec frozen = original.freeze();
+    target.hasId(ID);
+    original.forSpecificContainer(CONT_KEY);
+
+    assertThat("frozen spec followed the original", frozen.getQuery(),
+        is("g.E().has('sKey', 'KEY-1').inV().hasLabel('Artifact')"));
+    assertThat("frozen spec is not equal to its source", frozen, is(new EdgeSpec().hasKey(KEY).inV(
+        new VertexSpec().hasLabel(VERTEX_LABEL))));
+  }
+
+  @Test
+  public void should_render_frozen_spec_concurrently() throws Exception {
+    EdgeSpec frozen = new EdgeSpec().hasKey(KEY).forSpecificContainer(CONT_KEY)
+        .outV(new VertexSpec().hasLabel(VERTEX_LABEL).hasId(ID)).freeze();
+    String expected = frozen.getQuery();
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> queries = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        queries.add(executor.submit(() -> new GremlinQueryBuilder().withEdge(frozen).getQuery()));
+      }
+
+      for (Future<String> query : queries) {
+        assertThat("concurrent render differs", query.get(), is(expected));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void should_keep_property_order_when_overwritten_on_frozen_spec() {
+    VertexSpec frozen = new VertexSpec().hasId(ID).hasKey(KEY).hasType("Jar").hasVersion("1").has("container",
+        CONT_KEY).freeze();
+    VertexSpec changed = frozen.hasKey("KEY-2");
+    System.out.println("changed frozen spec query: " + changed.getQuery());
+
+    assertThat("overwritten property moved", changed.getQuery(), is("g.V().has('sid', 'ID-1').has('sKey', 'KEY-2')"
+        + ".has('type', 'Jar').has('version', '1').has('container', 'CKEY-1')"));
+    assertThat("frozen spec changed", frozen.getQuery(), is("g.V().has('sid', 'ID-1').has('sKey', 'KEY-1')"
+        + ".has('type', 'Jar').has('version', '1').has('container', 'CKEY-1')"));
+    assertThat("empty specs differ", new EdgeSpec().freeze(), is(new EdgeSpec()));
+  }
+}
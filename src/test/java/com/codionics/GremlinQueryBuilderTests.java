@@ -4,6 +4,10 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Test;
 
 public class GremlinQueryBuilderTests {
@@ -33,6 +37,8 @@ public class GremlinQueryBuilderTests {
 
   private final String EDGE_SPEC_CONT_LATEST_V_QUERY = "g.E().hasLabel('Relation').has('container', 'CKEY-1').has('_isLatest', 'TRUE')";
 
+  private final String EDGE_KEY_CONT_LATEST_V_PARAM_QUERY = "g.E().has('sKey', p0).has('container', p1).has('_isLatest', p2)";
+
   @Test
   public void should_build_query_for_vertices() {
     GremlinQueryBuilder gqb = new GremlinQueryBuilder().vertices();
@@ -143,4 +149,255 @@ public class GremlinQueryBuilderTests {
     assertThat("query is empty", query.isEmpty(), is(false));
     assertThat("query is empty", query, is(EDGE_KEY_V_CONT_LATEST_V_QUERY));
   }
+
+  @Test
+  public void should_build_parameterized_query_for_edge_with_key_specific_container_latest_version() {
+    EdgeSpec es = new EdgeSpec().hasKey(KEY).forSpecificContainer(CONT_KEY).lastestVersionOfRelations(true);
+    ParameterizedQuery pq = new GremlinQueryBuilder().withEdge(es).getParameterizedQuery();
+    System.out.println("parameterized edge with key query for specific container key, only latest version: " + pq);
+
+    Map<String, Object> bindings = pq.getBindings();
+    assertThat("query is not parameterized", pq.getQuery(), is(EDGE_KEY_CONT_LATEST_V_PARAM_QUERY));
+    assertThat("key is not bound", bindings.get("p0"), is((Object) KEY));
+    assertThat("container is not bound", bindings.get("p1"), is((Object) CONT_KEY));
+    assertThat("latest is not bound", bindings.get("p2"), is((Object) "TRUE"));
+  }
+
+  @Test
+  public void should_build_same_parameterized_query_for_same_spec_shape() {
+    EdgeSpec es1 = new EdgeSpec().hasKey(KEY).outV(new VertexSpec().hasLabel(VERTEX_LABEL).hasId(ID));
+    EdgeSpec es2 = new EdgeSpec().hasKey("KEY-2").outV(new VertexSpec().hasLabel(VERTEX_LABEL).hasId("ID-2"));
+    ParameterizedQuery pq1 = new GremlinQueryBuilder().withEdge(es1).getParameterizedQuery();
+    ParameterizedQuery pq2 = new GremlinQueryBuilder().withEdge(es2).getParameterizedQuery();
+
+    assertThat("query text differs", pq1.getQuery(), is(pq2.getQuery()));
+    assertThat("query is not parameterized", pq1.getQuery(),
+        is("g.E().has('sKey', p0).outV().hasLabel('Artifact').has('sid', p1)"));
+    assertThat("nested id is not bound", pq2.getBindings().get("p1"), is((Object) "ID-2"));
+  }
+
+  @Test
+  public void should_render_compiled_template_with_new_values() {
+    EdgeSpec es = new EdgeSpec().hasKey(KEY).forSpecificContainer(CONT_KEY).lastestVersionOfRelations(true);
+    QueryTemplate template = new GremlinQueryBuilder().withEdge(es).compile();
+    String query = template.render("KEY-2", "CKEY-2", "FALSE");
+    System.out.println("compiled edge query rendered with new values: " + query);
+
+    assertThat("template has wrong slot count", template.getSlotCount(), is(3));
+    assertThat("template does not render compiled values", template.render(), is(EDGE_KEY_CONT_LATEST_V_QUERY));
+    assertThat("template does not render new values", query,
+        is("g.E().has('sKey', 'KEY-2').has('container', 'CKEY-2').has('_isLatest', 'FALSE')"));
+    assertThat("template does not bind new values", template.bind("KEY-2", "CKEY-2", "FALSE").getQuery(),
+        is(EDGE_KEY_CONT_LATEST_V_PARAM_QUERY));
+  }
+
+  @Test
+  public void should_append_edge_with_where_vertex_to_buffer() {
+    VertexSpec vs = new VertexSpec().hasLabel(VERTEX_LABEL).hasId(ID);
+    EdgeSpec es = new EdgeSpec().hasLabel(EDGE_LABEL).whereOutV(vs);
+    StringBuilder builder = new StringBuilder("query: ");
+    es.appendTo(builder);
+    System.out.println("edge with label & where source vertex with id " + builder);
+
+    assertThat("query is not appended", builder.toString(),
+        is("query: g.E().hasLabel('Relation').where(outV().hasLabel('Artifact').has('sid', 'ID-1'))"));
+    assertThat("query differs from appended query", es.getQuery(), is(builder.substring("query: ".length())));
+  }
+
+  @Test
+  public void should_report_renders_to_render_metrics() {
+    RenderStatistics statistics = new RenderStatistics();
+    GremlinQueryBuilder gqb = new GremlinQueryBuilder().withRenderMetrics(statistics)
+        .withEdge(new EdgeSpec().hasKey(KEY).forSpecificContainer(CONT_KEY).lastestVersionOfRelations(true));
+    gqb.getQuery();
+    gqb.getParameterizedQuery();
+    System.out.println("render statistics: " + statistics);
+
+    assertThat("renders are not counted", statistics.getRenderCount(), is(2L));
+    assertThat("output size is not recorded", statistics.getMaxOutputSize(),
+        is((long) EDGE_KEY_CONT_LATEST_V_QUERY.length()));
+    assertThat("latency is not recorded", statistics.getLatencyPercentile(100) > 0, is(true));
+  }
+
+  @Test
+  public void should_build_query_for_vertices_with_ids_in_collection() {
+    VertexSpec vs = new VertexSpec().hasLabel(VERTEX_LABEL).hasIdIn(Arrays.asList(ID, "ID-2"));
+    GremlinQueryBuilder gqb = new GremlinQueryBuilder().withVertex(vs);
+    String query = gqb.getQuery();
+    ParameterizedQuery pq = gqb.getParameterizedQuery();
+    System.out.println("vertex with ids query: " + query);
+
+    assertThat("query is wrong", query, is("g.V().hasLabel('Artifact').has('sid', within('ID-1', 'ID-2'))"));
+    assertThat("query is not parameterized", pq.getQuery(), is("g.V().hasLabel('Artifact').has('sid', within(p0))"));
+    assertThat("ids are not bound", pq.getBindings().get("p0"), is((Object) Arrays.asList(ID, "ID-2")));
+    assertThat("template does not render ids", gqb.compile().render(Arrays.asList("ID-3", "ID-4")),
+        is("g.V().hasLabel('Artifact').has('sid', within('ID-3', 'ID-4'))"));
+  }
+
+  @Test
+  public void should_chunk_vertex_lookups_by_key() {
+    List<String> keys = Arrays.asList("K1", "K2", "K3", "K2", "K4", "K5");
+    List<GremlinQueryBuilder> lookups = GremlinQueryBuilder.vertexLookups(new VertexSpec().hasLabel(VERTEX_LABEL),
+        "sKey", keys, 2);
+
+    assertThat("values are not chunked", lookups.size(), is(3));
+    assertThat("first chunk is wrong", lookups.get(0).getQuery(),
+        is("g.V().hasLabel('Artifact').has('sKey', within('K1', 'K2'))"));
+    assertThat("last chunk is wrong", lookups.get(2).getQuery(), is("g.V().hasLabel('Artifact').has('sKey', within('K5'))"));
+    assertThat("chunks have different shapes", lookups.get(0).getParameterizedQuery().getQuery(),
+        is(lookups.get(1).getParameterizedQuery().getQuery()));
+  }
+
+  @Test
+  public void should_build_batch_query_for_independent_specs() {
+    VertexSpec vs = new VertexSpec().hasLabel(VERTEX_LABEL).hasId(ID);
+    EdgeSpec es = new EdgeSpec().hasKey(KEY).forSpecificContainer(CONT_KEY);
+    GremlinQueryBuilder gqb = new GremlinQueryBuilder().withVertex(vs).withEdge(es);
+    BatchQuery batch = gqb.getBatchQuery();
+    BatchQuery parameterizedBatch = gqb.getParameterizedBatchQuery();
+    System.out.println("batch query: " + batch);
+
+    assertThat("batch query is wrong", batch.getQuery(), is("g.inject(1).union(__.V().hasLabel('Artifact')"
+        + ".has('sid', 'ID-1').fold(), __.E().has('sKey', 'KEY-1').has('container', 'CKEY-1').fold())"));
+    assertThat("batch query is not parameterized", parameterizedBatch.getQuery(), is("g.inject(1).union("
+        + "__.V().hasLabel('Artifact').has('sid', p0).fold(), __.E().has('sKey', p1).has('container', p2).fold())"));
+    assertThat("container is not bound", parameterizedBatch.getBindings().get("p2"), is((Object) CONT_KEY));
+
+    List<List<Object>> results = batch.split(Arrays.asList(Arrays.asList("v1"), Arrays.asList("e1", "e2")));
+    assertThat("vertex results are wrong", results.get(0), is(Arrays.asList((Object) "v1")));
+    assertThat("edge results are wrong", results.get(1), is(Arrays.asList((Object) "e1", "e2")));
+  }
+
+  @Test
+  public void should_build_same_optimized_query_regardless_of_call_order() {
+    EdgeSpec es1 = new EdgeSpec().lastestVersionOfRelations(true).forSpecificContainer(CONT_KEY).hasLabel(EDGE_LABEL)
+        .hasKey(KEY);
+    EdgeSpec es2 = new EdgeSpec().hasKey(KEY).hasLabel(EDGE_LABEL).forSpecificContainer(CONT_KEY)
+        .lastestVersionOfRelations(true);
+    String query1 = new GremlinQueryBuilder().withIndexSchema(IndexSchema.defaultSchema()).withEdge(es1).getQuery();
+    String query2 = new GremlinQueryBuilder().withIndexSchema(IndexSchema.defaultSchema()).withEdge(es2).getQuery();
+    System.out.println("optimized edge query: " + query1);
+
+    assertThat("optimized queries differ", query1, is(query2));
+    assertThat("optimized query is wrong", query1, is("g.E().has('sKey', 'KEY-1').hasLabel('Relation')"
+        + ".has('container', 'CKEY-1').has('_isLatest', 'TRUE')"));
+  }
+
+  @Test
+  public void should_move_where_after_filters() {
+    VertexSpec vs = new VertexSpec().hasLabel(VERTEX_LABEL).hasId(ID);
+    EdgeSpec es = new EdgeSpec().whereOutV(vs).hasLabel(EDGE_LABEL).hasIdIn(Arrays.asList(ID, "ID-2"));
+    String query = new GremlinQueryBuilder().withIndexSchema(IndexSchema.defaultSchema()).withEdge(es).getQuery();
+    System.out.println("optimized edge query with where: " + query);
+
+    assertThat("optimized query is wrong", query, is("g.E().has('sid', within('ID-1', 'ID-2')).hasLabel('Relation')"
+        + ".where(outV().has('sid', 'ID-1').hasLabel('Artifact'))"));
+  }
+
+  @Test
+  public void should_fold_redundant_filters() {
+    Traversal where = Traversal.anonymous().addStep("outV").addStep("has", "sid", ID);
+    Traversal traversal = Traversal.fromSource().addStep("E").addStep("where", where)
+        .addStep("has", "sKey", PropertyPredicate.within(Arrays.asList(KEY, "KEY-2"))).addStep("where", where)
+        .addStep("has", "sKey", KEY).addStep("hasLabel", EDGE_LABEL).addStep("hasLabel", EDGE_LABEL);
+    Traversal optimized = new QueryOptimizer(IndexSchema.defaultSchema()).optimize(traversal);
+    System.out.println("optimized traversal: " + optimized);
+
+    assertThat("optimized traversal is wrong", ScriptSerializer.serialize(optimized),
+        is("g.E().has('sKey', 'KEY-1').hasLabel('Relation').where(outV().has('sid', 'ID-1'))"));
+  }
+
+  @Test
+  public void should_build_query_for_edge_with_predicates() {
+    EdgeSpec es = new EdgeSpec().hasLabel(EDGE_LABEL).has("version", PropertyPredicate.between("V-1", "V-5"))
+        .has("sKey", PropertyPredicate.startingWith("KEY-")).has("type", PropertyPredicate.neq(TYPE_KEY))
+        .has("container", PropertyPredicate.without(Arrays.asList(CONT_KEY, "CKEY-2")));
+    GremlinQueryBuilder gqb = new GremlinQueryBuilder().withEdge(es);
+    String query = gqb.getQuery();
+    ParameterizedQuery pq = gqb.getParameterizedQuery();
+    System.out.println("edge with predicates query: " + query);
+
+    assertThat("query is wrong", query, is("g.E().hasLabel('Relation').has('version', between('V-1', 'V-5'))"
+        + ".has('sKey', startingWith('KEY-')).has('type', neq('TKEY-1')).has('container', without('CKEY-1', 'CKEY-2'))"));
+    assertThat("query is not parameterized", pq.getQuery(), is("g.E().hasLabel('Relation').has('version', "
+        + "between(p0, p1)).has('sKey', startingWith(p2)).has('type', neq(p3)).has('container', without(p4))"));
+    assertThat("template does not render new values", gqb.compile().render("V-2", "V-3", "K", "T",
+        Arrays.asList("C")), is("g.E().hasLabel('Relation').has('version', between('V-2', 'V-3'))"
+            + ".has('sKey', startingWith('K')).has('type', neq('T')).has('container', without('C'))"));
+  }
+
+  @Test
+  public void should_build_query_for_vertex_with_numeric_range() {
+    VertexSpec vs = new VertexSpec().hasLabel(VERTEX_LABEL).has("size", PropertyPredicate.gt(10))
+        .has("revision", PropertyPredicate.lte(20L));
+
+    assertThat("query is wrong", vs.getQuery(),
+        is("g.V().hasLabel('Artifact').has('size', gt(10)).has('revision', lte(20))"));
+    assertThat("bytecode is wrong", GraphSONBytecodeSerializer.serialize(vs.getTraversal()),
+        is("{\"@type\":\"g:Bytecode\",\"@value\":{\"step\":[[\"V\"],[\"hasLabel\",\"Artifact\"],"
+            + "[\"has\",\"size\",{\"@type\":\"g:P\",\"@value\":{\"predicate\":\"gt\","
+            + "\"value\":{\"@type\":\"g:Int32\",\"@value\":10}}}],"
+            + "[\"has\",\"revision\",{\"@type\":\"g:P\",\"@value\":{\"predicate\":\"lte\","
+            + "\"value\":{\"@type\":\"g:Int64\",\"@value\":20}}}]]}}"));
+  }
+
+  @Test
+  public void should_build_query_with_projections() {
+    EdgeSpec es = new EdgeSpec().hasKey(KEY).forSpecificContainer(CONT_KEY);
+    VertexSpec vs = new VertexSpec().hasLabel(VERTEX_LABEL).project("sid", "version");
+    String edgeValues = new GremlinQueryBuilder().withEdge(es).values("sid", "version").getQuery();
+    String edgeCount = new GremlinQueryBuilder().withEdge(es).count().getQuery();
+    System.out.println("edge values query: " + edgeValues);
+
+    assertThat("values query is wrong", edgeValues,
+        is("g.E().has('sKey', 'KEY-1').has('container', 'CKEY-1').values('sid', 'version')"));
+    assertThat("count query is wrong", edgeCount, is("g.E().has('sKey', 'KEY-1').has('container', 'CKEY-1').count()"));
+    assertThat("project query is wrong", vs.getQuery(),
+        is("g.V().hasLabel('Artifact').project('sid', 'version').by('sid').by('version')"));
+    assertThat("id query is wrong", new VertexSpec().hasId(ID).id().getQuery(), is("g.V().has('sid', 'ID-1').id()"));
+    assertThat("value map query is wrong", new GremlinQueryBuilder().withVertex(new VertexSpec().hasId(ID))
+        .valueMap().getBatchQuery().getQuery(), is("g.inject(1).union(__.V().has('sid', 'ID-1').valueMap().fold())"));
+    assertThat("projection steps differ from query", ScriptSerializer.serialize(vs.getTraversal()), is(vs.getQuery()));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void should_reject_projection_on_spec_with_projection() {
+    VertexSpec vs = new VertexSpec().hasLabel(VERTEX_LABEL).count();
+    new GremlinQueryBuilder().withVertex(vs).count().getQuery();
+  }
+
+  @Test
+  public void should_escape_literals() {
+    VertexSpec vs = new VertexSpec().hasLabel("Art'ifact").has("path", "C:\\temp\nO'Brien");
+    String query = vs.getQuery();
+    System.out.println("escaped query: " + query);
+
+    assertThat("escaped query is wrong", query,
+        is("g.V().hasLabel('Art\\'ifact').has('path', 'C:\\\\temp\\nO\\'Brien')"));
+    assertThat("escaped traversal differs from query", ScriptSerializer.serialize(vs.getTraversal()), is(query));
+    assertThat("template did not skip escaped quotes", QueryTemplate.compile(new GremlinQueryBuilder().withVertex(vs)
+        .getParameterizedQuery()).render("p0's"), is("g.V().hasLabel('Art\\'ifact').has('path', 'p0\\'s')"));
+  }
+
+  @Test
+  public void should_replace_placeholders_in_order() {
+    GremlinQueryBuilder gqb = new GremlinQueryBuilder().vertices().edges().vertices()
+        .withVertex(new VertexSpec().hasId(ID));
+    String query = gqb.getBatchQuery().getQuery();
+    System.out.println("batch query after replacing a placeholder: " + query);
+
+    assertThat("placeholder was not replaced", query,
+        is("g.inject(1).union(__.E().fold(), __.V().fold(), __.V().has('sid', 'ID-1').fold())"));
+    assertThat("spec count is wrong", gqb.getBatchQuery().getSpecCount(), is(3));
+  }
+
+  @Test
+  public void should_add_many_specs() {
+    GremlinQueryBuilder gqb = new GremlinQueryBuilder().vertices().edges();
+    for (int i = 0; i < 20_000; i++) {
+      gqb.withVertex(new VertexSpec().hasId("ID-" + i)).withEdge(new EdgeSpec().hasKey("KEY-" + i));
+    }
+
+    assertThat("spec count is wrong", gqb.getBatchQuery().getSpecCount(), is(40_000));
+  }
 }
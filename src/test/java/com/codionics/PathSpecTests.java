@@ -0,0 +1,48 @@
+package com.codionics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PathSpecTests {
+
+  private final String ID = "ID-1";
+  private final String EDGE_LABEL = "dependsOn";
+  private final String VERTEX_LABEL = "Artifact";
+
+  @Test
+  public void should_render_fixed_hop_count() {
+    String query = new GremlinQueryBuilder().withPath(new VertexSpec().hasId(ID),
+        PathSpec.out(new EdgeSpec().hasLabel(EDGE_LABEL)).times(3).simplePath()).getQuery();
+    System.out.println("fixed hop path query: " + query);
+
+    assertThat("path query is wrong", query,
+        is("g.V().has('sid', 'ID-1').repeat(outE().hasLabel('dependsOn').inV().simplePath()).times(3)"));
+  }
+
+  @Test
+  public void should_render_hop_range_and_until() {
+    VertexSpec vs = new VertexSpec().hasId(ID).path(PathSpec.in(new EdgeSpec().hasLabel(EDGE_LABEL)).hops(2, 4)
+        .until(new VertexSpec().hasLabel(VERTEX_LABEL)).dedup());
+
+    assertThat("path query is wrong", vs.getQuery(), is("g.V().has('sid', 'ID-1').repeat(inE().hasLabel('dependsOn')"
+        + ".outV()).until(or(and(hasLabel('Artifact'), loops().is(gte(2))), loops().is(4)))"
+        + ".emit(loops().is(gte(2))).dedup()"));
+    assertThat("path steps differ from query", ScriptSerializer.serialize(vs.getTraversal()), is(vs.getQuery()));
+  }
+
+  @Test
+  public void should_bind_hop_filters() {
+    VertexSpec vs = new VertexSpec().hasId(ID).path(PathSpec.out(new EdgeSpec().lastestVersionOfRelations(true)
+        .inV(new VertexSpec().hasLabel(VERTEX_LABEL))).emit().until(new VertexSpec().hasId("ID-9")));
+    Map<String, Object> bindings = new LinkedHashMap<>();
+
+    assertThat("parameterized path query is wrong", vs.getQuery(bindings), is("g.V().has('sid', p0).repeat(outE()"
+        + ".has('_isLatest', p1).inV().hasLabel('Artifact')).until(has('sid', p2)).emit()"));
+    assertThat("bindings are wrong", bindings.get("p2"), is("ID-9"));
+  }
+}
@@ -0,0 +1,152 @@
+package com.codionics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+public class QueryExecutorTests {
+
+  private final String VERTEX_LABEL = "Artifact";
+
+  private final List<QueryRequest> requests = new CopyOnWriteArrayList<>();
+  private final List<CompletableFuture<List<Object>>> responses = new CopyOnWriteArrayList<>();
+
+  private final QueryTransport transport = request -> {
+    CompletableFuture<List<Object>> response = new CompletableFuture<>();
+    requests.add(request);
+    responses.add(response);
+    return response;
+  };
+
+  @Test
+  public void should_block_submitters_while_too_many_requests_are_in_flight() throws Exception {
+    QueryExecutor executor = new QueryExecutor(transport, 2);
+    executor.submit(vertexWithId("ID-1"));
+    executor.submit(vertexWithId("ID-2"));
+
+    CompletableFuture<List<Object>> third = CompletableFuture.supplyAsync(() -> executor.submit(vertexWithId("ID-3")))
+        .thenCompose(f -> f);
+    Thread.sleep(100);
+    assertThat("the third request was sent too early", requests.size(), is(2));
+
+    responses.get(0).complete(Collections.singletonList("v1"));
+    waitFor(() -> requests.size() == 3);
+    responses.get(2).complete(Collections.singletonList("v3"));
+    System.out.println("third request: " + requests.get(2));
+
+    assertThat("the third result is wrong", third.get(1, TimeUnit.SECONDS), is(Collections.singletonList("v3")));
+    assertThat("the in flight count is wrong", executor.getInFlightCount(), is(1));
+  }
+
+  @Test
+  public void should_reject_without_blocking_when_too_many_requests_are_in_flight() throws Exception {
+    QueryExecutor executor = new QueryExecutor(transport, 1);
+    CompletableFuture<List<Object>> first = executor.submit(vertexWithId("ID-1"));
+    CompletableFuture<List<Object>> rejected = executor.trySubmit(vertexWithId("ID-2"));
+    CompletableFuture<List<Object>> chained = first.thenCompose(r -> executor.trySubmit(vertexWithId("ID-3")));
+
+    assertThat("the second request was not rejected", rejected.isCompletedExceptionally(), is(true));
+    responses.get(0).complete(Collections.singletonList("v1"));
+    responses.get(1).complete(Collections.singletonList("v3"));
+    System.out.println("chained request: " + requests.get(1));
+
+    assertThat("the chained result is wrong", chained.get(1, TimeUnit.SECONDS), is(Collections.singletonList("v3")));
+    assertThat("the requests sent are wrong", requests.size(), is(2));
+  }
+
+  @Test
+  public void should_coalesce_identical_queries_in_flight() throws Exception {
+    QueryExecutor executor = new QueryExecutor(transport, 4).withCoalescing();
+    CompletableFuture<List<Object>> first = executor.submit(vertexWithId("ID-1"));
+    CompletableFuture<List<Object>> second = executor.submit(vertexWithId("ID-1"));
+    executor.submit(vertexWithId("ID-2"));
+
+    assertThat("identical queries were sent twice", requests.size(), is(2));
+    responses.get(0).complete(Collections.singletonList("v1"));
+    assertThat("the first result is wrong", first.get(), is(Collections.singletonList("v1")));
+    assertThat("the coalesced result is wrong", second.get(), is(Collections.singletonList("v1")));
+    assertThat("the coalesced count is wrong", executor.getCoalescedCount(), is(1L));
+
+    executor.submit(vertexWithId("ID-1"));
+    assertThat("a completed query was not sent again", requests.size(), is(3));
+  }
+
+  @Test
+  public void should_not_coalesce_onto_a_query_the_transport_rejected() throws Exception {
+    QueryExecutor executor = new QueryExecutor(request -> {
+      requests.add(request);
+      if (requests.size() == 1) {
+        throw new IllegalStateException("connection closed");
+      }
+      return CompletableFuture.completedFuture(Collections.singletonList("v1"));
+    }, 1).withCoalescing();
+
+    try {
+      executor.submit(vertexWithId("ID-1"));
+    } catch (IllegalStateException e) {
+      System.out.println("first submit failed: " + e.getMessage());
+    }
+
+    assertThat("the retried result is wrong", executor.submit(vertexWithId("ID-1")).get(1, TimeUnit.SECONDS),
+        is(Collections.singletonList("v1")));
+    assertThat("the failed request kept its permit", executor.getInFlightCount(), is(0));
+  }
+
+  @Test
+  public void should_build_traversal_only_when_the_transport_needs_it() {
+    AtomicInteger builds = new AtomicInteger();
+    GremlinQueryBuilder builder = vertexWithId("ID-1");
+    QueryRequest request = new QueryRequest(builder.getParameterizedQuery(), () -> {
+      builds.incrementAndGet();
+      return builder.getTraversal();
+    });
+    assertThat("the traversal was built eagerly", builds.get(), is(0));
+
+    request.getTraversal();
+    request.getTraversal();
+    assertThat("the traversal was built more than once", builds.get(), is(1));
+  }
+
+  @Test
+  public void should_return_results_in_submission_order() throws Exception {
+    QueryExecutor executor = new QueryExecutor(transport, 3);
+    CompletableFuture<List<List<Object>>> all = executor.submitAll(Arrays.asList(vertexWithId("ID-1"),
+        vertexWithId("ID-2"), vertexWithId("ID-3")));
+
+    responses.get(2).complete(Collections.singletonList("v3"));
+    responses.get(0).complete(Collections.singletonList("v1"));
+    responses.get(1).completeExceptionally(new IllegalStateException("timeout"));
+    assertThat("a failure was not reported", all.isCompletedExceptionally(), is(true));
+
+    QueryExecutor other = new QueryExecutor(request -> CompletableFuture.completedFuture(
+        new ArrayList<Object>(request.getQuery().getBindings().values())), 1);
+    List<List<Object>> results = other.submitAll(Arrays.asList(vertexWithId("ID-1"), vertexWithId("ID-2"))).get();
+    System.out.println("results: " + results);
+
+    assertThat("the results are out of order", results,
+        is(Arrays.asList(Collections.<Object>singletonList("ID-1"), Collections.<Object>singletonList("ID-2"))));
+    assertThat("the submitted count is wrong", other.getSubmittedCount(), is(2L));
+  }
+
+  private GremlinQueryBuilder vertexWithId(String id) {
+    return new GremlinQueryBuilder().withVertex(new VertexSpec().hasLabel(VERTEX_LABEL).hasId(id));
+  }
+
+  private void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 1000;
+    while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+  }
+}
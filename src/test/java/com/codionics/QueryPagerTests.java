@@ -0,0 +1,71 @@
+package com.codionics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+public class QueryPagerTests {
+
+  private final String VERTEX_LABEL = "Artifact";
+
+  @Test
+  public void should_page_with_ranges() {
+    QueryPager pager = GremlinQueryBuilder.offsetPages(new VertexSpec().hasLabel(VERTEX_LABEL).orderBy("sid"), 100);
+    String first = pager.next().getQuery();
+    String second = pager.next().getQuery();
+    System.out.println("second offset page query: " + second);
+
+    assertThat("first page is wrong", first, is("g.V().hasLabel('Artifact').order().by('sid').limit(100)"));
+    assertThat("second page is wrong", second, is("g.V().hasLabel('Artifact').order().by('sid').range(100, 200)"));
+
+    pager.onPageFetched(42, null);
+    assertThat("pager did not stop after last page", pager.hasNext(), is(false));
+  }
+
+  @Test
+  public void should_page_with_keyset() {
+    QueryPager pager = GremlinQueryBuilder.keysetPages(new VertexSpec().hasLabel(VERTEX_LABEL), "sid", 2);
+    GremlinQueryBuilder first = pager.next();
+    pager.onPageFetched(2, "ID-2");
+    GremlinQueryBuilder second = pager.next();
+    pager.onPageFetched(2, "ID-4");
+    GremlinQueryBuilder third = pager.next();
+    System.out.println("third keyset page query: " + third.getQuery());
+
+    assertThat("first page is wrong", first.getQuery(), is("g.V().hasLabel('Artifact').order().by('sid').limit(2)"));
+    assertThat("second page is wrong", second.getQuery(),
+        is("g.V().hasLabel('Artifact').has('sid', gt('ID-2')).order().by('sid').limit(2)"));
+    assertThat("pages have different shapes", third.getParameterizedQuery().getQuery(),
+        is(second.getParameterizedQuery().getQuery()));
+    assertThat("page is not parameterized", third.getParameterizedQuery().getQuery(),
+        is("g.V().hasLabel('Artifact').has('sid', gt(p0)).order().by('sid').limit(p1)"));
+    assertThat("pager stopped early", pager.hasNext(), is(true));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void should_require_last_key_before_next_keyset_page() {
+    QueryPager pager = GremlinQueryBuilder.keysetPages(new VertexSpec().hasLabel(VERTEX_LABEL), "sid", 2);
+    pager.next();
+    pager.next();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void should_require_last_key_of_full_keyset_page() {
+    QueryPager pager = GremlinQueryBuilder.keysetPages(new VertexSpec().hasLabel(VERTEX_LABEL), "sid", 2);
+    pager.next();
+    pager.onPageFetched(2, null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void should_reject_keyset_paging_of_nested_specs() {
+    EdgeSpec es = new EdgeSpec().hasLabel("Relation").inV(new VertexSpec().hasLabel(VERTEX_LABEL));
+    GremlinQueryBuilder.keysetPages(es, "sid", 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void should_reject_keyset_paging_of_specs_filtering_on_the_key() {
+    VertexSpec vs = new VertexSpec().hasLabel(VERTEX_LABEL).has("ts", PropertyPredicate.lt(100));
+    GremlinQueryBuilder.keysetPages(vs, "ts", 2);
+  }
+}
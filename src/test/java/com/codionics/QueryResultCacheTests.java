@@ -0,0 +1,126 @@
+package com.codionics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Ticker;
+
+import org.junit.Test;
+
+public class QueryResultCacheTests {
+
+  private final String EDGE_LABEL = "Relation";
+  private final String CONTAINER = "CKEY-1";
+  private final String OTHER_CONTAINER = "CKEY-2";
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private String load(ParameterizedQuery query) {
+    loads.incrementAndGet();
+    return "result of " + query;
+  }
+
+  private EdgeSpec latestRelations(String container) {
+    return new EdgeSpec().hasLabel(EDGE_LABEL).forSpecificContainer(container).lastestVersionOfRelations(true);
+  }
+
+  @Test
+  public void should_load_each_query_once() {
+    QueryResultCache<String> cache = new QueryResultCache<>(100, 1, TimeUnit.MINUTES);
+    String first = cache.get(latestRelations(CONTAINER), this::load);
+    String second = cache.get(latestRelations(CONTAINER), this::load);
+    System.out.println("cached result: " + first);
+
+    assertThat("cached result differs", second, is(first));
+    assertThat("query was loaded more than once", loads.get(), is(1));
+  }
+
+  @Test
+  public void should_expire_entries_after_ttl() {
+    AtomicInteger nanos = new AtomicInteger();
+    Ticker ticker = new Ticker() {
+      @Override
+      public long read() {
+        return nanos.get();
+      }
+    };
+    QueryResultCache<String> cache = new QueryResultCache<>(100, 10, TimeUnit.NANOSECONDS, ticker);
+    cache.get(latestRelations(CONTAINER), this::load);
+    nanos.addAndGet(20);
+
+    assertThat("entry did not expire", cache.getIfPresent(latestRelations(CONTAINER)), is(nullValue()));
+  }
+
+  @Test
+  public void should_invalidate_only_affected_containers() {
+    QueryResultCache<String> cache = new QueryResultCache<>(100, 1, TimeUnit.MINUTES);
+    cache.get(latestRelations(CONTAINER), this::load);
+    cache.get(latestRelations(OTHER_CONTAINER), this::load);
+    cache.get(new EdgeSpec().hasLabel(EDGE_LABEL), this::load);
+
+    cache.invalidateContainer(CONTAINER);
+
+    assertThat("container entry was not invalidated", cache.getIfPresent(latestRelations(CONTAINER)), is(nullValue()));
+    assertThat("unscoped entry was not invalidated", cache.getIfPresent(new EdgeSpec().hasLabel(EDGE_LABEL)),
+        is(nullValue()));
+    assertThat("other container was invalidated", cache.size(), is(1L));
+  }
+
+  @Test
+  public void should_not_cache_results_invalidated_while_loading() {
+    QueryResultCache<String> cache = new QueryResultCache<>(100, 1, TimeUnit.MINUTES);
+    String result = cache.get(latestRelations(CONTAINER), query -> {
+      cache.invalidateContainer(CONTAINER);
+      return load(query);
+    });
+    System.out.println("result invalidated while loading: " + result);
+
+    assertThat("result was not returned", result.startsWith("result of"), is(true));
+    assertThat("stale result was cached", cache.getIfPresent(latestRelations(CONTAINER)), is(nullValue()));
+    cache.get(latestRelations(CONTAINER), this::load);
+    assertThat("query was not loaded again", loads.get(), is(2));
+    assertThat("reloaded result was not cached", cache.size(), is(1L));
+  }
+
+  @Test
+  public void should_not_scope_entries_by_containers_of_other_elements() {
+    QueryResultCache<String> cache = new QueryResultCache<>(100, 1, TimeUnit.MINUTES);
+    VertexSpec anyContainer = new VertexSpec().hasId("ID-1")
+        .outE(new EdgeSpec().forSpecificContainer(CONTAINER).inV(new VertexSpec().outE(new EdgeSpec())));
+    VertexSpec otherContainer = new VertexSpec().hasId("ID-1")
+        .outE(new EdgeSpec().forSpecificContainer(CONTAINER).inV(new VertexSpec()
+            .outE(new EdgeSpec().forSpecificContainer(OTHER_CONTAINER))));
+    cache.get(anyContainer, this::load);
+    cache.get(otherContainer, this::load);
+
+    cache.invalidateContainer("CKEY-3");
+    assertThat("entry over every container was kept", cache.getIfPresent(anyContainer), is(nullValue()));
+    assertThat("entry of other container was invalidated", cache.getIfPresent(otherContainer) != null, is(true));
+
+    cache.invalidateContainer(CONTAINER);
+    assertThat("entry passing through container was kept", cache.getIfPresent(otherContainer), is(nullValue()));
+  }
+
+  @Test
+  public void should_invalidate_only_latest_relations_when_flags_change() {
+    QueryResultCache<String> cache = new QueryResultCache<>(100, 1, TimeUnit.MINUTES);
+    EdgeSpec allVersions = new EdgeSpec().hasLabel(EDGE_LABEL).forSpecificContainer(CONTAINER);
+    EdgeSpec allFlags = new EdgeSpec().hasLabel(EDGE_LABEL).forSpecificContainer(CONTAINER).valueMap();
+    cache.get(latestRelations(CONTAINER), this::load);
+    cache.get(allVersions, this::load);
+    cache.get(allFlags, this::load);
+
+    cache.invalidateLatestRelations(CONTAINER);
+
+    assertThat("latest entry was not invalidated", cache.getIfPresent(latestRelations(CONTAINER)), is(nullValue()));
+    assertThat("entry returning _isLatest was not invalidated", cache.getIfPresent(allFlags), is(nullValue()));
+    assertThat("entry without _isLatest was invalidated", cache.getIfPresent(allVersions) != null, is(true));
+
+    cache.invalidateContainer(CONTAINER);
+    assertThat("new version did not invalidate all versions", cache.getIfPresent(allVersions), is(nullValue()));
+  }
+}
@@ -0,0 +1,58 @@
+package com.codionics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+public class RenderedQueryCacheTests {
+
+  private final String ID = "ID-1";
+  private final String EDGE_LABEL = "Relation";
+  private final String VERTEX_LABEL = "Artifact";
+
+  @Test
+  public void should_reuse_rendered_query_for_equal_specs() {
+    RenderedQueryCache cache = new RenderedQueryCache(10_000);
+    String first = cache.getQuery(new VertexSpec().hasLabel(VERTEX_LABEL).hasId(ID));
+    String second = cache.getQuery(new VertexSpec().hasLabel(VERTEX_LABEL).hasId(ID));
+    System.out.println("cache stats: " + cache.getStats());
+
+    assertThat("cached query differs", second, is(first));
+    assertThat("cache did not miss once", cache.getStats().missCount(), is(1L));
+    assertThat("cache did not hit once", cache.getStats().hitCount(), is(1L));
+  }
+
+  @Test
+  public void should_not_collide_vertex_specs_with_different_edges() {
+    RenderedQueryCache cache = new RenderedQueryCache(10_000);
+    String withoutEdge = cache.getQuery(new VertexSpec().hasLabel(VERTEX_LABEL));
+    String withEdge = cache.getQuery(new VertexSpec().hasLabel(VERTEX_LABEL).outE(new EdgeSpec().hasLabel(EDGE_LABEL)));
+
+    assertThat("vertex specs with different edges collided", withEdge, is(not(withoutEdge)));
+    assertThat("vertex query with edge is wrong", withEdge, is("g.V().hasLabel('Artifact').outE().hasLabel('Relation')"));
+  }
+
+  @Test
+  public void should_not_change_cached_query_when_spec_changes() {
+    RenderedQueryCache cache = new RenderedQueryCache(10_000);
+    VertexSpec vs = new VertexSpec().hasLabel(VERTEX_LABEL);
+    cache.getQuery(vs);
+    vs.hasId(ID);
+
+    assertThat("changed spec got stale query", cache.getQuery(vs), is("g.V().hasLabel('Artifact').has('sid', 'ID-1')"));
+    assertThat("original spec query was lost", cache.getQuery(new VertexSpec().hasLabel(VERTEX_LABEL)),
+        is("g.V().hasLabel('Artifact')"));
+  }
+
+  @Test
+  public void should_evict_queries_beyond_maximum_weight() {
+    RenderedQueryCache cache = new RenderedQueryCache(100);
+    for (int i = 0; i < 100; i++) {
+      cache.getQuery(new VertexSpec().hasLabel(VERTEX_LABEL).hasId("ID-" + i));
+    }
+
+    assertThat("cache was not bounded", cache.size() < 10, is(true));
+  }
+}
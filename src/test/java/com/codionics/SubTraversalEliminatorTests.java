@@ -0,0 +1,87 @@
+package com.codionics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SubTraversalEliminatorTests {
+
+  private final String ID = "ID-1";
+  private final String KEY = "KEY-1";
+  private final String EDGE_LABEL = "Relation";
+  private final String VERTEX_LABEL = "Artifact";
+
+  @Test
+  public void should_serialize_batch_traversal_like_batch_query() {
+    GremlinQueryBuilder gqb = new GremlinQueryBuilder().withVertex(new VertexSpec().hasId(ID))
+        .withEdge(new EdgeSpec().hasKey(KEY).whereOutV(new VertexSpec().hasLabel(VERTEX_LABEL))).count();
+    Map<String, Object> bindings = new LinkedHashMap<>();
+
+    assertThat("batch traversal differs from batch query", ScriptSerializer.serialize(gqb.getBatchTraversal()),
+        is(gqb.getBatchQuery().getQuery()));
+    assertThat("parameterized batch traversal differs", ScriptSerializer.serialize(gqb.getBatchTraversal(),
+        bindings), is(gqb.getParameterizedBatchQuery().getQuery()));
+  }
+
+  private VertexSpec artifact() {
+    return new VertexSpec().hasLabel(VERTEX_LABEL).hasId(ID);
+  }
+
+  @Test
+  public void should_drop_repeated_nested_vertex_filters() {
+    Traversal artifact = Traversal.anonymous().addStep("outV").addStep("hasLabel", VERTEX_LABEL).addStep("has", "sid",
+        ID).addStep("has", "sid", ID);
+    Traversal traversal = Traversal.fromSource().addStep("E").addStep("hasLabel", EDGE_LABEL).addStep("where", artifact)
+        .addStep("where", artifact);
+    String query = ScriptSerializer.serialize(new SubTraversalEliminator().eliminate(traversal));
+    System.out.println("query without repeated filters: " + query);
+
+    assertThat("repeated filters were not dropped", query, is("g.E().hasLabel('Relation')"
+        + ".where(outV().hasLabel('Artifact').has('sid', 'ID-1'))"));
+  }
+
+  @Test
+  public void should_keep_repeated_navigation_steps() {
+    Traversal traversal = Traversal.fromSource().addStep("V").addStep("outE").addStep("inV").addStep("inV");
+
+    assertThat("navigation steps were dropped", ScriptSerializer.serialize(new SubTraversalEliminator().eliminate(
+        traversal)), is("g.V().outE().inV().inV()"));
+  }
+
+  @Test
+  public void should_hoist_vertex_filters_shared_by_batch_branches() {
+    GremlinQueryBuilder gqb = new GremlinQueryBuilder().withSubTraversalElimination()
+        .withEdge(new EdgeSpec().hasLabel(EDGE_LABEL).whereOutV(artifact()))
+        .withEdge(new EdgeSpec().hasKey(KEY).whereInV(artifact()));
+    String query = gqb.getBatchQuery().getQuery();
+    System.out.println("batch query with shared filter: " + query);
+
+    assertThat("shared filter was not hoisted", query, is("g.inject(1).sideEffect(__.V().hasLabel('Artifact')"
+        + ".has('sid', 'ID-1').aggregate('cse0')).union(__.E().hasLabel('Relation').where(outV().where("
+        + "within('cse0'))).fold(), __.E().has('sKey', 'KEY-1').where(inV().where(within('cse0'))).fold())"));
+    assertThat("side-effect key was bound", gqb.getParameterizedBatchQuery().getQuery().contains("within('cse0')"),
+        is(true));
+  }
+
+  @Test
+  public void should_not_hoist_unselective_vertex_filters() {
+    GremlinQueryBuilder gqb = new GremlinQueryBuilder().withSubTraversalElimination()
+        .withEdge(new EdgeSpec().hasLabel(EDGE_LABEL).whereOutV(new VertexSpec().hasLabel(VERTEX_LABEL)))
+        .withEdge(new EdgeSpec().hasKey(KEY).whereInV(new VertexSpec().hasLabel(VERTEX_LABEL)));
+    String query = gqb.getBatchQuery().getQuery();
+    System.out.println("batch query with label filter: " + query);
+
+    assertThat("label filter was hoisted", query, is("g.inject(1).union(__.E().hasLabel('Relation')"
+        + ".where(outV().hasLabel('Artifact')).fold(), __.E().has('sKey', 'KEY-1').where(inV().hasLabel('Artifact'))"
+        + ".fold())"));
+    assertThat("indexed filter was not hoisted", new GremlinQueryBuilder().withSubTraversalElimination()
+        .withIndexSchema(IndexSchema.defaultSchema().withIndex("version"))
+        .withEdge(new EdgeSpec().whereOutV(new VertexSpec().has("version", "V-1")))
+        .withEdge(new EdgeSpec().whereInV(new VertexSpec().has("version", "V-1"))).getBatchQuery().getQuery()
+        .contains("sideEffect(__.V().has('version', 'V-1').aggregate('cse0'))"), is(true));
+  }
+}
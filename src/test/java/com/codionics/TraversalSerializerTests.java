@@ -0,0 +1,73 @@
+package com.codionics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TraversalSerializerTests {
+
+  private final String ID = "ID-1";
+  private final String KEY = "KEY-1";
+  private final String CONT_KEY = "CKEY-1";
+  private final String EDGE_LABEL = "Relation";
+  private final String VERTEX_LABEL = "Artifact";
+
+  private EdgeSpec nestedEdgeSpec() {
+    return new EdgeSpec().hasLabel(EDGE_LABEL).hasKey(KEY).forSpecificContainer(CONT_KEY)
+        .inV(new VertexSpec().hasLabel(VERTEX_LABEL).hasIdIn(Arrays.asList(ID, "ID-2")))
+        .whereOutV(new VertexSpec().hasLabel(VERTEX_LABEL).hasId(ID)).orderBy("sKey").range(10, 20);
+  }
+
+  @Test
+  public void should_serialize_steps_to_same_script_as_spec() {
+    EdgeSpec es = nestedEdgeSpec();
+    Traversal traversal = new GremlinQueryBuilder().withEdge(es).getTraversal();
+    System.out.println("edge traversal steps: " + traversal.getSteps());
+
+    assertThat("script differs from spec query", ScriptSerializer.serialize(traversal), is(es.getQuery()));
+    assertThat("last step is not range", traversal.getSteps().get(traversal.getSteps().size() - 1).getName(),
+        is("range"));
+  }
+
+  @Test
+  public void should_serialize_steps_to_same_parameterized_script_as_spec() {
+    EdgeSpec es = nestedEdgeSpec();
+    Map<String, Object> specBindings = new LinkedHashMap<>();
+    Map<String, Object> stepBindings = new LinkedHashMap<>();
+    String specQuery = es.getQuery(specBindings);
+    String stepQuery = ScriptSerializer.serialize(es.getTraversal(), stepBindings);
+
+    assertThat("parameterized script differs from spec query", stepQuery, is(specQuery));
+    assertThat("bindings differ from spec bindings", stepBindings, is(specBindings));
+  }
+
+  @Test
+  public void should_serialize_steps_to_graphson_bytecode() {
+    VertexSpec vs = new VertexSpec().hasLabel(VERTEX_LABEL).hasIdIn(Arrays.asList(ID, "ID-2"))
+        .outE(new EdgeSpec().hasLabel(EDGE_LABEL).whereInV(new VertexSpec().hasKey("K\"1")));
+    String bytecode = GraphSONBytecodeSerializer.serialize(vs.getTraversal());
+    System.out.println("vertex bytecode: " + bytecode);
+
+    assertThat("bytecode is wrong", bytecode, is("{\"@type\":\"g:Bytecode\",\"@value\":{\"step\":[[\"V\"],"
+        + "[\"hasLabel\",\"Artifact\"],[\"has\",\"sid\",{\"@type\":\"g:P\",\"@value\":{\"predicate\":\"within\","
+        + "\"value\":{\"@type\":\"g:List\",\"@value\":[\"ID-1\",\"ID-2\"]}}}],[\"outE\"],[\"hasLabel\",\"Relation\"],"
+        + "[\"where\",{\"@type\":\"g:Bytecode\",\"@value\":{\"step\":[[\"inV\"],[\"has\",\"sKey\",\"K\\\"1\"]]}}]]}}"));
+  }
+
+  @Test
+  public void should_serialize_text_predicate_to_graphson_bytecode() {
+    VertexSpec vs = new VertexSpec().has("sKey", PropertyPredicate.startingWith("KEY-"))
+        .has("version", PropertyPredicate.between("V-1", "V-5"));
+
+    assertThat("bytecode is wrong", GraphSONBytecodeSerializer.serialize(vs.getTraversal()), is("{\"@type\":"
+        + "\"g:Bytecode\",\"@value\":{\"step\":[[\"V\"],[\"has\",\"sKey\",{\"@type\":\"g:TextP\","
+        + "\"@value\":{\"predicate\":\"startingWith\",\"value\":\"KEY-\"}}],[\"has\",\"version\","
+        + "{\"@type\":\"g:P\",\"@value\":{\"predicate\":\"between\",\"value\":{\"@type\":\"g:List\","
+        + "\"@value\":[\"V-1\",\"V-5\"]}}}]]}}"));
+  }
+}
@@ -0,0 +1,60 @@
+package com.codionics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class Utf8RenderingTests {
+
+  private final String VERTEX_LABEL = "Artifact";
+  private final String NAME = "Größe € 😀";
+
+  private String decode(ByteBuffer buffer) {
+    buffer.flip();
+    return StandardCharsets.UTF_8.decode(buffer).toString();
+  }
+
+  @Test
+  public void should_write_utf8_into_heap_and_direct_buffers() {
+    VertexSpec vs = new VertexSpec().hasLabel(VERTEX_LABEL).has("name", NAME);
+    ByteBuffer heap = ByteBuffer.allocate(256);
+    ByteBuffer direct = ByteBuffer.allocateDirect(256);
+
+    int bytes = vs.writeUtf8(heap);
+    vs.writeUtf8(direct);
+    System.out.println("utf-8 bytes written: " + bytes);
+
+    assertThat("byte count is wrong", bytes, is(vs.getQuery().getBytes(StandardCharsets.UTF_8).length));
+    assertThat("heap buffer is wrong", decode(heap), is(vs.getQuery()));
+    assertThat("direct buffer is wrong", decode(direct), is(vs.getQuery()));
+  }
+
+  @Test
+  public void should_leave_buffer_unchanged_on_overflow() {
+    ByteBuffer buffer = ByteBuffer.allocate(8);
+    try {
+      new VertexSpec().hasLabel(VERTEX_LABEL).writeUtf8(buffer);
+      throw new AssertionError("overflow was not signalled");
+    } catch (BufferOverflowException e) {
+      assertThat("buffer was written", buffer.position(), is(0));
+    }
+  }
+
+  @Test
+  public void should_grow_buffer_keeping_its_contents() {
+    GremlinQueryBuilder builder = new GremlinQueryBuilder().withVertex(new VertexSpec().hasLabel(VERTEX_LABEL)
+        .has("name", NAME));
+    ByteBuffer buffer = ByteBuffer.allocateDirect(8);
+    buffer.put((byte) '#');
+
+    ByteBuffer grown = builder.appendUtf8(buffer);
+
+    assertThat("grown buffer is not direct", grown.isDirect(), is(true));
+    assertThat("grown buffer is wrong", decode(grown), is("#" + builder.getQuery()));
+  }
+}
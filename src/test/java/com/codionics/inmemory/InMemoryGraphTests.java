@@ -0,0 +1,181 @@
+package com.codionics.inmemory;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.codionics.EdgeSpec;
+import com.codionics.GremlinQueryBuilder;
+import com.codionics.PathSpec;
+import com.codionics.PropertyPredicate;
+import com.codionics.QueryExecutor;
+import com.codionics.Traversal;
+import com.codionics.VertexSpec;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class InMemoryGraphTests {
+
+  private final String VERTEX_LABEL = "Artifact";
+  private final String EDGE_LABEL = "dependsOn";
+  private final String CONTAINER = "Container-1";
+
+  private InMemoryGraph graph;
+  private InMemoryVertex first;
+  private InMemoryVertex second;
+  private InMemoryVertex third;
+
+  @Before
+  public void setUp() {
+    graph = InMemoryGraph.withDefaultIndexes();
+    first = graph.addVertex(VERTEX_LABEL, ImmutableMap.of("sid", "ID-1", "container", CONTAINER, "version", 1));
+    second = graph.addVertex(VERTEX_LABEL, ImmutableMap.of("sid", "ID-2", "container", CONTAINER, "version", 3));
+    third = graph.addVertex("Module", ImmutableMap.of("sid", "ID-3", "version", 2));
+    graph.addEdge(EDGE_LABEL, first, second, ImmutableMap.of("_isLatest", "TRUE"));
+    graph.addEdge(EDGE_LABEL, first, third, ImmutableMap.of("_isLatest", "FALSE"));
+  }
+
+  @Test
+  public void should_find_vertices_by_indexed_and_unindexed_properties() {
+    List<Object> byId = graph.execute(new VertexSpec().hasLabel(VERTEX_LABEL).hasId("ID-2"));
+    List<Object> byVersion = graph.execute(new VertexSpec().has("version", PropertyPredicate.between(2, 4)));
+    System.out.println("vertices by version: " + byVersion);
+
+    assertThat("indexed lookup is wrong", byId, is(Collections.singletonList(second)));
+    assertThat("scan is wrong", byVersion, is(Arrays.asList(second, third)));
+  }
+
+  @Test
+  public void should_match_numbers_of_any_type_with_and_without_index() {
+    InMemoryGraph indexed = new InMemoryGraph("version");
+    InMemoryGraph unindexed = new InMemoryGraph();
+    for (InMemoryGraph g : Arrays.asList(indexed, unindexed)) {
+      g.addVertex(VERTEX_LABEL, ImmutableMap.of("sid", "ID-1", "version", 1L));
+      g.addVertex(VERTEX_LABEL, ImmutableMap.of("sid", "ID-2", "version", 2.0));
+      g.addVertex(VERTEX_LABEL, ImmutableMap.of("sid", "ID-3", "version", 3));
+    }
+    GremlinQueryBuilder within = new GremlinQueryBuilder().withVertex(new VertexSpec().has("version",
+        PropertyPredicate.within(Arrays.asList(1, 2)))).values("sid");
+    Traversal equal = Traversal.fromSource().addStep("V").addStep("has", "version", 3L).addStep("values", "sid");
+    System.out.println("indexed within results: " + indexed.execute(within));
+
+    assertThat("within results differ", indexed.execute(within), is(unindexed.execute(within)));
+    assertThat("within results are wrong", indexed.execute(within), is(Arrays.asList("ID-1", "ID-2")));
+    assertThat("equality results differ", indexed.execute(equal), is(unindexed.execute(equal)));
+    assertThat("equality results are wrong", indexed.execute(equal), is(Collections.singletonList("ID-3")));
+  }
+
+  @Test
+  public void should_find_vertices_with_within_in_id_order() {
+    List<Object> vertices = graph.execute(new VertexSpec().hasIdIn(Arrays.asList("ID-3", "ID-1")));
+
+    assertThat("within lookup is wrong", vertices, is(Arrays.asList(first, third)));
+  }
+
+  @Test
+  public void should_follow_edges_and_filter_with_where() {
+    List<Object> latest = graph.execute(new VertexSpec().hasId("ID-1")
+        .outE(new EdgeSpec().hasLabel(EDGE_LABEL).lastestVersionOfRelations(true).inV(new VertexSpec())));
+    List<Object> withDependents = graph.execute(new VertexSpec()
+        .inE(new EdgeSpec().hasLabel(EDGE_LABEL).whereOutV(new VertexSpec().hasId("ID-1"))));
+    System.out.println("latest dependencies: " + latest);
+
+    assertThat("traversal is wrong", latest, is(Collections.singletonList(second)));
+    assertThat("where is wrong", withDependents.size(), is(2));
+  }
+
+  @Test
+  public void should_page_and_project() {
+    GremlinQueryBuilder builder = new GremlinQueryBuilder()
+        .withVertex(new VertexSpec().hasLabel(VERTEX_LABEL).orderBy("version").range(1, 2)).values("sid");
+    List<Object> count = graph.execute(new GremlinQueryBuilder().withVertex(new VertexSpec().has("container",
+        CONTAINER)).count());
+
+    assertThat("paged values are wrong", graph.execute(builder), is(Collections.singletonList("ID-2")));
+    assertThat("count is wrong", count, is(Collections.singletonList(2L)));
+  }
+
+  @Test
+  public void should_reindex_updated_properties() {
+    graph.setProperty(third, "container", CONTAINER);
+
+    List<Object> vertices = graph.execute(new VertexSpec().has("container", CONTAINER));
+    assertThat("updated property is not indexed", vertices, is(Arrays.asList(first, second, third)));
+  }
+
+  @Test
+  public void should_walk_paths_without_revisiting_vertices() {
+    graph.addEdge(EDGE_LABEL, second, third, Collections.emptyMap());
+    graph.addEdge(EDGE_LABEL, third, first, Collections.emptyMap());
+    VertexSpec start = new VertexSpec().hasId("ID-1");
+    PathSpec dependencies = PathSpec.out(new EdgeSpec().hasLabel(EDGE_LABEL)).simplePath();
+
+    List<Object> twoHops = graph.execute(new GremlinQueryBuilder().withPath(start, dependencies.times(2)).values(
+        "sid"));
+    List<Object> untilModule = graph.execute(new GremlinQueryBuilder().withPath(start, dependencies.until(
+        new VertexSpec().hasLabel("Module")).dedup()).values("sid"));
+    System.out.println("two hop dependencies: " + twoHops);
+
+    assertThat("two hop walk is wrong", twoHops, is(Collections.singletonList("ID-3")));
+    assertThat("walk until module is wrong", untilModule, is(Collections.singletonList("ID-3")));
+  }
+
+  @Test
+  public void should_not_return_vertices_before_min_hops() {
+    graph.addEdge(EDGE_LABEL, second, third, Collections.emptyMap());
+    VertexSpec start = new VertexSpec().hasId("ID-1");
+    PathSpec dependencies = PathSpec.out(new EdgeSpec().hasLabel(EDGE_LABEL)).hops(2, 3);
+
+    List<Object> emitted = graph.execute(new GremlinQueryBuilder().withPath(start, dependencies.emit()).values("sid"));
+    List<Object> untilModule = graph.execute(new GremlinQueryBuilder().withPath(start, dependencies.until(
+        new VertexSpec().hasLabel("Module"))).values("sid"));
+    System.out.println("vertices after two hops: " + emitted);
+
+    assertThat("emitted vertices are wrong", emitted, is(Collections.singletonList("ID-3")));
+    assertThat("walk until module is wrong", untilModule, is(Collections.singletonList("ID-3")));
+  }
+
+  @Test
+  public void should_return_same_results_after_sub_traversal_elimination() {
+    VertexSpec dependent = new VertexSpec().hasLabel(VERTEX_LABEL).hasId("ID-1");
+    GremlinQueryBuilder builder = new GremlinQueryBuilder()
+        .withEdge(new EdgeSpec().lastestVersionOfRelations(true).whereOutV(dependent))
+        .withEdge(new EdgeSpec().hasLabel(EDGE_LABEL).whereInV(new VertexSpec().hasLabel("Module")))
+        .withVertex(new VertexSpec().outE(new EdgeSpec().whereOutV(dependent))).id();
+
+    List<Object> expected = graph.execute(builder.getBatchTraversal());
+    List<Object> eliminated = graph.execute(builder.withSubTraversalElimination().getBatchTraversal());
+    System.out.println("results after sub-traversal elimination: " + eliminated);
+
+    assertThat("shared filter was not hoisted", builder.getBatchQuery().getQuery().contains("aggregate('cse0')"),
+        is(true));
+    assertThat("results differ", eliminated, is(expected));
+  }
+
+  @Test
+  public void should_execute_queries_through_the_in_memory_transport() throws Exception {
+    ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    try {
+      InMemoryTransport transport = new InMemoryTransport(graph, scheduler).withLatency(10, TimeUnit.MILLISECONDS);
+      QueryExecutor executor = new QueryExecutor(transport, 2).withCoalescing();
+      List<List<Object>> results = executor.submitAll(Arrays.asList(
+          new GremlinQueryBuilder().withVertex(new VertexSpec().hasId("ID-2")),
+          new GremlinQueryBuilder().withVertex(new VertexSpec().hasId("ID-3")),
+          new GremlinQueryBuilder().withVertex(new VertexSpec().hasId("ID-2")))).get(1, TimeUnit.SECONDS);
+      System.out.println("transport results: " + results);
+
+      assertThat("the transport results are wrong", results, is(Arrays.asList(Collections.<Object>singletonList(second),
+          Collections.<Object>singletonList(third), Collections.<Object>singletonList(second))));
+    } finally {
+      scheduler.shutdownNow();
+    }
+  }
+}